@@ -0,0 +1,274 @@
+package fr.unistra.wsi.synthetic.bench;
+
+import static java.lang.Math.sqrt;
+import static multij.tools.Tools.unchecked;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal average-time benchmark harness: each case runs warmup iterations, then measurement iterations
+ * of a fixed duration, and reports the mean time per operation in microseconds.
+ * <br>Results are printed in the CSV format of JMH (mode <code>avgt</code>), so that runs of different versions
+ * can be compared with the same tools.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class Benchmark {
+	
+	private final Pattern filter;
+	
+	private final int warmupIterationCount;
+	
+	private final int measurementIterationCount;
+	
+	private final long iterationNanoseconds;
+	
+	private final List<Result> results;
+	
+	/**
+	 * @param filter
+	 * <br>Only the cases whose name contains a match are run
+	 */
+	public Benchmark(final String filter, final int warmupIterationCount, final int measurementIterationCount,
+			final long iterationMilliseconds) {
+		this.filter = Pattern.compile(filter);
+		this.warmupIterationCount = warmupIterationCount;
+		this.measurementIterationCount = measurementIterationCount;
+		this.iterationNanoseconds = iterationMilliseconds * 1_000_000L;
+		this.results = new ArrayList<>();
+	}
+	
+	public final boolean accepts(final String name) {
+		return this.filter.matcher(name).find();
+	}
+	
+	public final List<Result> getResults() {
+		return this.results;
+	}
+	
+	/**
+	 * Measures <code>operation</code> in batches, for cases that do not modify their fixture:
+	 * each sample times batches of calls lasting at least {@link #BATCH_NANOSECONDS}, so that short calls are not dominated
+	 * by the cost of {@link System#nanoTime()}.
+	 */
+	public final void measure(final String name, final String parameters, final Callable<?> operation) {
+		if (!this.accepts(name)) {
+			return;
+		}
+		
+		final int batchSize = calibrate(operation);
+		
+		this.run(name, parameters, () -> this.iterate(operation, batchSize));
+	}
+	
+	/**
+	 * Measures each call of <code>operation</code> separately on a new fixture, whose creation is not measured.
+	 */
+	public final <T> void measure(final String name, final String parameters, final Callable<T> setup,
+			final Function<T, ?> operation) {
+		if (!this.accepts(name)) {
+			return;
+		}
+		
+		this.run(name, parameters, () -> this.iterate(setup, operation));
+	}
+	
+	/**
+	 * @param iteration
+	 * <br>Runs an iteration and returns the mean time per operation in microseconds
+	 */
+	private final void run(final String name, final String parameters, final DoubleSupplier iteration) {
+		System.err.print(name + " " + parameters + ":");
+		
+		for (int i = 0; i < this.warmupIterationCount; ++i) {
+			iteration.getAsDouble();
+		}
+		
+		final double[] samples = new double[this.measurementIterationCount];
+		
+		for (int i = 0; i < this.measurementIterationCount; ++i) {
+			samples[i] = iteration.getAsDouble();
+			System.err.print(String.format(Locale.ENGLISH, " %.3f", samples[i]));
+		}
+		
+		final Result result = new Result(name, parameters, samples);
+		
+		System.err.println(" -> " + result);
+		
+		this.results.add(result);
+	}
+	
+	/**
+	 * @return the mean time per operation in microseconds
+	 */
+	private final <T> double iterate(final Callable<T> setup, final Function<T, ?> operation) {
+		long elapsed = 0L;
+		long operationCount = 0L;
+		
+		try {
+			while (elapsed < this.iterationNanoseconds) {
+				final T fixture = setup.call();
+				final long start = System.nanoTime();
+				
+				sink ^= operation.apply(fixture).hashCode();
+				elapsed += System.nanoTime() - start;
+				++operationCount;
+			}
+		} catch (final Exception exception) {
+			throw unchecked(exception);
+		}
+		
+		return elapsed / 1.0E3 / operationCount;
+	}
+	
+	/**
+	 * @return the mean time per operation in microseconds, timing <code>batchSize</code> calls at once
+	 */
+	private final double iterate(final Callable<?> operation, final int batchSize) {
+		long elapsed = 0L;
+		long operationCount = 0L;
+		
+		while (elapsed < this.iterationNanoseconds) {
+			elapsed += runBatch(operation, batchSize);
+			operationCount += batchSize;
+		}
+		
+		return elapsed / 1.0E3 / operationCount;
+	}
+	
+	/**
+	 * Prints the results in the CSV format of JMH, with the case parameters in a single column.
+	 */
+	public final void printCSV(final PrintStream output) {
+		output.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Param: parameters\"");
+		
+		for (final Result result : this.results) {
+			output.println(String.format(Locale.ENGLISH, "\"%s\",\"avgt\",1,%d,%.6f,%.6f,\"us/op\",\"%s\"",
+					result.getName(), result.getSamples().length, result.getScore(), result.getError(), result.getParameters()));
+		}
+	}
+	
+	/**
+	 * Prevents the JIT from discarding the results of the measured operations.
+	 */
+	static volatile int sink;
+	
+	/**
+	 * Minimum duration of a batch of calls, in nanoseconds.
+	 */
+	public static final long BATCH_NANOSECONDS = 100_000L;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int MAXIMUM_BATCH_SIZE = 1 << 20;
+	
+	/**
+	 * @return the smallest power of 2, up to {@link #MAXIMUM_BATCH_SIZE}, of calls of <code>operation</code>
+	 * lasting at least {@link #BATCH_NANOSECONDS}
+	 */
+	static final int calibrate(final Callable<?> operation) {
+		int result = 1;
+		
+		while (result < MAXIMUM_BATCH_SIZE && runBatch(operation, result) < BATCH_NANOSECONDS) {
+			result *= 2;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return the duration of <code>batchSize</code> calls of <code>operation</code>, in nanoseconds
+	 */
+	static final long runBatch(final Callable<?> operation, final int batchSize) {
+		int hash = 0;
+		final long start = System.nanoTime();
+		
+		try {
+			for (int i = 0; i < batchSize; ++i) {
+				hash ^= operation.call().hashCode();
+			}
+		} catch (final Exception exception) {
+			throw unchecked(exception);
+		}
+		
+		final long result = System.nanoTime() - start;
+		
+		sink ^= hash;
+		
+		return result;
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	public static final class Result {
+		
+		private final String name;
+		
+		private final String parameters;
+		
+		private final double[] samples;
+		
+		Result(final String name, final String parameters, final double[] samples) {
+			this.name = name;
+			this.parameters = parameters;
+			this.samples = samples;
+		}
+		
+		public final String getName() {
+			return this.name;
+		}
+		
+		public final String getParameters() {
+			return this.parameters;
+		}
+		
+		public final double[] getSamples() {
+			return this.samples;
+		}
+		
+		/**
+		 * @return the mean of the samples, in microseconds per operation
+		 */
+		public final double getScore() {
+			return Arrays.stream(this.samples).average().orElse(Double.NaN);
+		}
+		
+		/**
+		 * @return the half-width of the 99.9% confidence interval of the score, using a normal approximation
+		 */
+		public final double getError() {
+			final int n = this.samples.length;
+			
+			if (n < 2) {
+				return Double.NaN;
+			}
+			
+			final double mean = this.getScore();
+			final double variance = Arrays.stream(this.samples).map(x -> (x - mean) * (x - mean)).sum() / (n - 1);
+			
+			return Z_999 * sqrt(variance / n);
+		}
+		
+		@Override
+		public final String toString() {
+			return String.format(Locale.ENGLISH, "%.3f +- %.3f us/op", this.getScore(), this.getError());
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		public static final double Z_999 = 3.2905;
+		
+	}
+	
+}
@@ -0,0 +1,165 @@
+package fr.unistra.wsi.synthetic.bench;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.ceil;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+
+import fr.unistra.wsi.synthetic.AdjacentObjectsRenderer;
+import fr.unistra.wsi.synthetic.AdjacentObjectsRenderer.TextureUnit;
+import fr.unistra.wsi.synthetic.Model;
+import fr.unistra.wsi.synthetic.ModelRenderer;
+import fr.unistra.wsi.synthetic.Region;
+import fr.unistra.wsi.synthetic.SphereSystem;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import multij.tools.IllegalInstantiationException;
+
+/**
+ * Synthetic inputs built in memory, so that benchmarks need neither texture files, GUI nor Bio-Formats.
+ * <br>The same seed always gives the same fixtures.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class Fixtures {
+	
+	private Fixtures() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @return <code>n</code> nuclei-like units: darker ellipses with a lighter rim, each in its own image
+	 */
+	public static final List<TextureUnit> newTextureUnits(final Random random, final int n) {
+		final List<TextureUnit> result = new ArrayList<>(n);
+		
+		for (int i = 0; i < n; ++i) {
+			final int width = 12 + random.nextInt(20);
+			final int height = 12 + random.nextInt(20);
+			final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			final Ellipse2D ellipse = new Ellipse2D.Double(0.0, 0.0, width, height);
+			final Graphics2D g = image.createGraphics();
+			
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(new Color(180 + random.nextInt(40), 120 + random.nextInt(40), 200 + random.nextInt(40)));
+			g.fill(ellipse);
+			g.setColor(new Color(60 + random.nextInt(40), 20 + random.nextInt(40), 110 + random.nextInt(40)));
+			g.fill(new Ellipse2D.Double(2.0, 2.0, width - 4.0, height - 4.0));
+			g.dispose();
+			
+			result.add(new TextureUnit(image, new Region(new Area(ellipse), "unit" + i, 1)));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return a random star-shaped polygon with <code>vertexCount</code> vertices around <code>(centerX, centerY)</code>
+	 */
+	public static final Area newBlob(final Random random, final double centerX, final double centerY,
+			final double radius, final int vertexCount) {
+		final Path2D.Double result = new Path2D.Double();
+		
+		for (int i = 0; i < vertexCount; ++i) {
+			final double angle = 2.0 * PI * i / vertexCount;
+			final double r = radius * (0.75 + 0.25 * random.nextDouble());
+			final double x = centerX + r * cos(angle);
+			final double y = centerY + r * sin(angle);
+			
+			if (i == 0) {
+				result.moveTo(x, y);
+			} else {
+				result.lineTo(x, y);
+			}
+		}
+		
+		result.closePath();
+		
+		return new Area(result);
+	}
+	
+	/**
+	 * @return a model without image holding about <code>regionCount</code> blobs laid out on a grid
+	 * covering a <code>size</code> x <code>size</code> slide, their labels cycling through <code>labels</code>
+	 */
+	public static final Model newModel(final Random random, final int regionCount, final int size, final String... labels) {
+		final Model result = new Model();
+		
+		result.setImageRelativePath("");
+		
+		final int columnCount = (int) ceil(sqrt(regionCount));
+		final double cellSize = (double) size / columnCount;
+		
+		for (int i = 0; i < regionCount; ++i) {
+			final double centerX = (i % columnCount + 0.5) * cellSize;
+			final double centerY = (i / columnCount + 0.5) * cellSize;
+			
+			result.getRegions().add(new Region(newBlob(random, centerX, centerY, cellSize / 2.0, 64),
+					labels[i % labels.length], 1));
+		}
+		
+		return result.sortRegions();
+	}
+	
+	/**
+	 * @return a renderer of <code>model</code> using an {@link AdjacentObjectsRenderer}
+	 * with <code>unitCount</code> procedural texture units for each label
+	 * and at most <code>maximumIterationCount</code> solver iterations per region
+	 */
+	public static final ModelRenderer newRenderer(final Random random, final Model model, final int unitCount,
+			final int maximumIterationCount, final String... labels) {
+		final ModelRenderer result = new ModelRenderer(model);
+		
+		for (final String label : labels) {
+			result.setRegionRenderer(label, new AdjacentObjectsRenderer(1.0, newTextureUnits(random, unitCount))
+					.setMaximumIterationCount(maximumIterationCount));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return <code>n</code> overlapping spheres of radius 4 to 8 in a square sized for a dense packing
+	 */
+	public static final SphereSystem newSphereSystem(final Random random, final int n) {
+		final SphereSystem result = new SphereSystem();
+		final double size = 8.0 * sqrt(n);
+		
+		for (int i = 0; i < n; ++i) {
+			result.newSphere(size * random.nextDouble(), size * random.nextDouble(), 0.0, 4.0 + 4.0 * random.nextDouble(), 0);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return a <code>width</code> x <code>height</code> RGB tile with smooth gradients and some speckle
+	 */
+	public static final BufferedImage newTile(final Random random, final int width, final int height) {
+		final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				final int red = 200 + (x * 40 / width) + random.nextInt(8);
+				final int green = 120 + (y * 60 / height) + random.nextInt(8);
+				final int blue = 180 + ((x + y) * 30 / (width + height)) + random.nextInt(8);
+				
+				result.setRGB(x, y, (red << 16) | (green << 8) | blue);
+			}
+		}
+		
+		return result;
+	}
+	
+}
@@ -0,0 +1,196 @@
+package fr.unistra.wsi.synthetic.bench;
+
+import static multij.tools.Tools.unchecked;
+
+import fr.unistra.wsi.synthetic.AdjacentObjectsRenderer;
+import fr.unistra.wsi.synthetic.FusedPostProcessor;
+import fr.unistra.wsi.synthetic.Model;
+import fr.unistra.wsi.synthetic.Region;
+import fr.unistra.wsi.synthetic.RegionRenderer;
+import fr.unistra.wsi.synthetic.TilePostProcessor;
+
+import imj2.core.IMJCoreTools;
+import imj2.core.SubsampledImage2D;
+import imj2.tools.AwtBackedImage;
+import imj2.tools.Canvas;
+import imj2.tools.TileCodec;
+
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+import multij.tools.CommandLineArgumentsParser;
+import multij.tools.IllegalInstantiationException;
+
+import org.w3c.dom.Document;
+
+/**
+ * Micro-benchmarks of the hot paths of the generation, on the fixtures of {@link Fixtures}.
+ * <br>Arguments: <code>filter</code> (regular expression on the case names), <code>warmups</code>,
+ * <code>iterations</code>, <code>time</code> (milliseconds per iteration), <code>seed</code>
+ * and <code>output</code> (CSV file, <code>-</code> for the standard output, which is shared with the debug messages).
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class HotPathBenchmarks {
+	
+	private HotPathBenchmarks() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @param commandLineArguments
+	 * <br>Must not be null
+	 */
+	public static final void main(final String[] commandLineArguments) {
+		final CommandLineArgumentsParser arguments = new CommandLineArgumentsParser(commandLineArguments);
+		final Benchmark benchmark = new Benchmark(arguments.get("filter", ""), arguments.get("warmups", 3)[0],
+				arguments.get("iterations", 5)[0], arguments.get("time", 1000)[0]);
+		final long seed = arguments.get("seed", 1)[0];
+		final String output = arguments.get("output", "benchmarks.csv");
+		
+		for (final int n : SPHERE_COUNTS) {
+			final Random random = new Random(seed);
+			
+			benchmark.measure("SphereSystem.update2", "spheres=" + n,
+					() -> Fixtures.newSphereSystem(random, n), system -> system.update2());
+		}
+		
+		{
+			final Random random = new Random(seed);
+			final Region region = new Region(Fixtures.newBlob(random, 1024.0, 1024.0, 1024.0, 256), "tissue", 1);
+			final AdjacentObjectsRenderer renderer = new AdjacentObjectsRenderer(1.0, Fixtures.newTextureUnits(random, 16));
+			final Canvas canvas = new Canvas().setFormat(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_3BYTE_BGR);
+			final int tileX = 1024 - TILE_SIZE / 2;
+			final int tileY = 1024 - TILE_SIZE / 2;
+			
+			if (benchmark.accepts("AdjacentObjectsRenderer.render")) {
+				renderer.beforeRender(region);
+			}
+			
+			canvas.getGraphics().translate(-tileX, -tileY);
+			
+			benchmark.measure("AdjacentObjectsRenderer.render", "tile=" + TILE_SIZE, () -> {
+				renderer.render(region, canvas, tileX, tileY, TILE_SIZE, TILE_SIZE);
+				
+				return canvas.getImage();
+			});
+		}
+		
+		{
+			final Region region = new Region(Fixtures.newBlob(new Random(seed), 0.0, 0.0, 30_000.0, OUTLINE_VERTEX_COUNT), "fat", 1);
+			final Canvas canvas = new Canvas().setFormat(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_3BYTE_BGR);
+			
+			// A tile on the outline
+			canvas.getGraphics().translate(-26_000, -TILE_SIZE / 2);
+			
+			benchmark.measure("RegionRenderer.DEFAULT.render", "vertices=" + OUTLINE_VERTEX_COUNT + " cached=0", () -> {
+				// Evicts the clipped geometry so that the row is clipped again
+				IMJCoreTools.removeOldCacheEntries(1.0);
+				
+				return region;
+			}, r -> {
+				RegionRenderer.DEFAULT.render(r, canvas, 26_000, TILE_SIZE / 2, TILE_SIZE, TILE_SIZE);
+				
+				return canvas.getImage();
+			});
+			benchmark.measure("RegionRenderer.DEFAULT.render", "vertices=" + OUTLINE_VERTEX_COUNT + " cached=1", () -> {
+				RegionRenderer.DEFAULT.render(region, canvas, 26_000, TILE_SIZE / 2, TILE_SIZE, TILE_SIZE);
+				
+				return canvas.getImage();
+			});
+		}
+		
+		{
+			final BufferedImage tile = Fixtures.newTile(new Random(seed), TILE_SIZE, TILE_SIZE);
+			final TilePostProcessor postProcessor = new FusedPostProcessor(seed, true, 8, true);
+			
+			benchmark.measure("FusedPostProcessor.process", "tile=" + TILE_SIZE, () -> copy(tile), t -> {
+				postProcessor.process(t, 0, 0);
+				
+				return t;
+			});
+		}
+		
+		{
+			final AwtBackedImage source = new AwtBackedImage("bench", Fixtures.newTile(new Random(seed), 2 * TILE_SIZE, 2 * TILE_SIZE));
+			final SubsampledImage2D subsampled = new SubsampledImage2D(source, TILE_SIZE, TILE_SIZE);
+			
+			benchmark.measure("SubsampledImage2D.updateTile", "tile=" + TILE_SIZE, () -> {
+				// Evicts the previous tile so that it is computed again
+				IMJCoreTools.removeOldCacheEntries(1.0);
+				
+				return subsampled;
+			}, image -> image.getTileData(0, 0));
+		}
+		
+		{
+			final Area blob = Fixtures.newBlob(new Random(seed), 0.0, 0.0, 1000.0, SIMPLIFIED_VERTEX_COUNT);
+			
+			benchmark.measure("Region.simplify", "vertices=" + SIMPLIFIED_VERTEX_COUNT,
+					() -> new Region(new Area(blob), "tissue", 1), region -> region.simplify(8F));
+			
+			final Region region = new Region(blob, "tissue", 1);
+			
+			benchmark.measure("Region.computeArea", "vertices=" + SIMPLIFIED_VERTEX_COUNT, region::computeArea);
+		}
+		
+		{
+			final Document xml = Model.toXML(Fixtures.newModel(new Random(seed), MODEL_REGION_COUNT, 100_000, "tumor", "stroma"));
+			
+			benchmark.measure("Model.fromXML", "regions=" + MODEL_REGION_COUNT, () -> Model.fromXML(xml));
+		}
+		
+		{
+			final BufferedImage tile = Fixtures.newTile(new Random(seed), TILE_SIZE, TILE_SIZE);
+			final TileCodec codec = new TileCodec.Jpeg(new float[] { TileCodec.DEFAULT_JPEG_QUALITY }, true);
+			final byte[] encoded = encode(codec, tile);
+			
+			benchmark.measure("TileCodec.Jpeg.write", "tile=" + TILE_SIZE, () -> encode(codec, tile));
+			benchmark.measure("TileCodec.Jpeg.read", "tile=" + TILE_SIZE + " bytes=" + encoded.length,
+					() -> codec.read(new ByteArrayInputStream(encoded)));
+		}
+		
+		if ("-".equals(output)) {
+			benchmark.printCSV(System.out);
+		} else {
+			try (final PrintStream csv = new PrintStream(new FileOutputStream(output))) {
+				benchmark.printCSV(csv);
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		}
+	}
+	
+	public static final BufferedImage copy(final BufferedImage image) {
+		return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+	}
+	
+	public static final byte[] encode(final TileCodec codec, final BufferedImage tile) {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		
+		try {
+			codec.write(tile, 0, result);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		return result.toByteArray();
+	}
+	
+	public static final int TILE_SIZE = 512;
+	
+	public static final int SIMPLIFIED_VERTEX_COUNT = 4096;
+	
+	public static final int MODEL_REGION_COUNT = 200;
+	
+	public static final int OUTLINE_VERTEX_COUNT = 10_000;
+	
+	static final int[] SPHERE_COUNTS = { 1_000, 10_000, 50_000 };
+	
+}
@@ -0,0 +1,156 @@
+package fr.unistra.wsi.synthetic.bench;
+
+import static java.lang.Math.sqrt;
+import static java.util.Collections.singletonList;
+
+import fr.unistra.wsi.synthetic.FusedPostProcessor;
+import fr.unistra.wsi.synthetic.GenerateWSI;
+import fr.unistra.wsi.synthetic.GenerationMetrics;
+import fr.unistra.wsi.synthetic.Model;
+import fr.unistra.wsi.synthetic.ModelRenderer;
+import fr.unistra.wsi.synthetic.TilePipeline;
+
+import imj2.tools.TileCodec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import multij.tools.CommandLineArgumentsParser;
+import multij.tools.IllegalInstantiationException;
+import multij.tools.TicToc;
+
+/**
+ * Headless end-to-end run on procedural models, to measure how the generation scales
+ * with the slide size and the thread counts.
+ * <br>For each region count, a model is built by {@link Fixtures#newModel(Random, int, int, String...)}, its layout is solved
+ * once, then a ZIP pyramid is generated with each render thread count into a temporary directory.
+ * <br>Arguments: <code>regions</code> (comma-separated counts), <code>size</code> (model width and height for 16 regions,
+ * scaled to keep the region size constant), <code>labels</code> (comma-separated), <code>units</code> (texture units per label),
+ * <code>solverIterations</code> (limit per region, <code>0</code> for none, because the packing rarely becomes good enough),
+ * <code>renderThreads</code> (comma-separated counts), <code>encodeThreads</code>, <code>tileSize</code>, <code>tileFormat</code>,
+ * <code>seed</code> and <code>output</code> (CSV file, <code>-</code> for the standard output).
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class ThroughputBenchmark {
+	
+	private ThroughputBenchmark() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @param commandLineArguments
+	 * <br>Must not be null
+	 */
+	public static final void main(final String[] commandLineArguments) throws IOException {
+		final CommandLineArgumentsParser arguments = new CommandLineArgumentsParser(commandLineArguments);
+		final int[] regionCounts = arguments.get("regions", 4, 16);
+		final int size = arguments.get("size", 4096)[0];
+		final String[] labels = arguments.get("labels", "tumor,stroma").split(",");
+		final int unitCount = arguments.get("units", 16)[0];
+		final int solverIterationCount = arguments.get("solverIterations", 100)[0];
+		final int[] renderThreadCounts = arguments.get("renderThreads", 1, Runtime.getRuntime().availableProcessors());
+		final int tileSize = arguments.get("tileSize", 512)[0];
+		final String tileFormat = arguments.get("tileFormat", TileCodec.DEFAULT_FORMAT);
+		final long seed = arguments.get("seed", 1)[0];
+		final String output = arguments.get("output", "throughput.csv");
+		final TilePipeline.Settings defaultSettings = new TilePipeline.Settings();
+		final int encodeThreadCount = arguments.get("encodeThreads", defaultSettings.getEncodeThreadCount())[0];
+		final File directory = Files.createTempDirectory("throughput").toFile();
+		final StringBuilder csv = new StringBuilder(
+				"regions,width,height,solvedRegions,solverIterations,solverMilliseconds,solverPeakHeap,"
+				+ "renderThreads,encodeThreads,tiles,milliseconds,tilesPerSecond,peakHeap,encodedBytes,outputBytes\n");
+		
+		try {
+			for (final int regionCount : regionCounts) {
+				final Random random = new Random(seed);
+				final int modelSize = (int) (size * sqrt(regionCount / 16.0));
+				final Model model = Fixtures.newModel(random, regionCount, modelSize, labels);
+				final ModelRenderer renderer = Fixtures.newRenderer(random, model, unitCount, solverIterationCount, labels);
+				final GenerationMetrics metrics = GenerationMetrics.getInstance();
+				final int solvedRegionCount = metrics.getSolvedRegionCount();
+				final long previousSolverIterationCount = metrics.getSolverIterationCount();
+				final TicToc timer = new TicToc();
+				
+				resetPeakHeap();
+				timer.tic();
+				// Solves everything without saving the layout in the current directory
+				renderer.beforeRender(singletonList(model.getBounds()));
+				
+				final long solverMilliseconds = timer.toc();
+				final long solverPeakHeap = getPeakHeap();
+				
+				for (final int renderThreadCount : renderThreadCounts) {
+					final String outputBase = new File(directory, "slide" + regionCount + "_" + renderThreadCount).getPath();
+					final File outputFile = new File(outputBase + ".zip");
+					final TileCodec codec = GenerateWSI.newTileCodec(tileFormat, "" + TileCodec.DEFAULT_JPEG_QUALITY, true);
+					final TilePipeline.Settings settings = new TilePipeline.Settings()
+							.setRenderThreadCount(renderThreadCount).setEncodeThreadCount(encodeThreadCount);
+					
+					settings.setQueueCapacity(2 * renderThreadCount);
+					
+					resetPeakHeap();
+					timer.tic();
+					GenerateWSI.generate(model, renderer, tileSize, tileSize, outputBase, ".zip", outputFile.getName(),
+							new FusedPostProcessor(seed, false, 0, true), codec, settings);
+					
+					final long milliseconds = timer.toc();
+					final long tileCount = codec.getEncodedTileCount();
+					
+					csv.append(String.format(Locale.ENGLISH, "%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%.3f,%d,%d,%d\n",
+							regionCount, model.getBounds().width, model.getBounds().height,
+							metrics.getSolvedRegionCount() - solvedRegionCount, metrics.getSolverIterationCount() - previousSolverIterationCount,
+							solverMilliseconds, solverPeakHeap, renderThreadCount, encodeThreadCount,
+							tileCount, milliseconds, tileCount * 1000.0 / milliseconds, getPeakHeap(),
+							codec.getEncodedByteCount(), outputFile.length()));
+					
+					System.err.print(csv.substring(csv.lastIndexOf("\n", csv.length() - 2) + 1));
+					
+					Files.delete(outputFile.toPath());
+				}
+			}
+		} finally {
+			for (final File file : directory.listFiles()) {
+				Files.delete(file.toPath());
+			}
+			
+			Files.delete(directory.toPath());
+		}
+		
+		if ("-".equals(output)) {
+			System.out.print(csv);
+		} else {
+			try (final PrintStream out = new PrintStream(new FileOutputStream(output))) {
+				out.print(csv);
+			}
+		}
+	}
+	
+	public static final void resetPeakHeap() {
+		System.gc();
+		
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	/**
+	 * @return the sum of the peak usages of the heap pools since the last {@link #resetPeakHeap()},
+	 * which overestimates the peak of the whole heap
+	 */
+	public static final long getPeakHeap() {
+		return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP)
+				.mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+	}
+	
+}
@@ -1,15 +1,17 @@
 package fr.unistra.wsi.synthetic;
 
 import static java.lang.Math.PI;
+import static java.lang.Math.ceil;
 import static java.lang.Math.cos;
+import static java.lang.Math.floor;
 import static java.lang.Math.max;
 import static java.lang.Math.sin;
 import static java.lang.Math.sqrt;
 import static java.util.Collections.synchronizedMap;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static multij.tools.MathTools.square;
 import static fr.unistra.wsi.synthetic.GenerateWSI.CONSTRAINT_SOLVER_MAXIMUM_MILLISECONDS;
-import static fr.unistra.wsi.synthetic.GenerateWSI.RANDOM;
 
 import fr.unistra.wsi.synthetic.Region.ClosePath;
 import fr.unistra.wsi.synthetic.Region.PathElement;
@@ -18,6 +20,7 @@ import imj2.core.Image2D;
 import imj2.core.Image2D.MonopatchProcess;
 import imj2.tools.Canvas;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
@@ -28,11 +31,14 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
 
 import multij.tools.ConsoleMonitor;
 import multij.tools.TicToc;
@@ -55,6 +61,12 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 	
 	private final Map<Region, List<TextureObject>> objects;
 	
+	private transient Map<Region, BucketGrid> objectIndices;
+	
+	private int maximumIterationCount;
+	
+	private long seed;
+	
 	public AdjacentObjectsRenderer(final File... textureModelFiles) {
 		this(1.0, textureModelFiles);
 	}
@@ -67,6 +79,48 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 		this.unitAmounts = newProportions(this.getTextureUnits());
 	}
 	
+	/**
+	 * Uses texture units built in memory instead of extracted from texture models;
+	 * they are not serialized, so the result must not be saved in {@link GenerateWSI#RENDERERS_FILE}.
+	 */
+	public AdjacentObjectsRenderer(final double collisionableRadius, final List<TextureUnit> textureUnits) {
+		this.collisionableRadius = collisionableRadius;
+		this.textures = new Model[0];
+		this.textureUnits = new ArrayList<>(textureUnits);
+		this.systems = synchronizedMap(new HashMap<>());
+		this.objects = synchronizedMap(new HashMap<>());
+		this.unitAmounts = newProportions(this.getTextureUnits());
+	}
+	
+	public final long getSeed() {
+		return this.seed;
+	}
+	
+	/**
+	 * @param seed
+	 * <br>Slide seed from which the layout of each region gets its own stream, see {@link Seeds#regionSeed(long, Region)}
+	 */
+	public final AdjacentObjectsRenderer setSeed(final long seed) {
+		this.seed = seed;
+		
+		return this;
+	}
+	
+	public final int getMaximumIterationCount() {
+		return this.maximumIterationCount;
+	}
+	
+	/**
+	 * @param maximumIterationCount
+	 * <br>Solver iterations per region after which the layout is accepted even if it is not good enough,
+	 * in addition to {@link GenerateWSI#CONSTRAINT_SOLVER_MAXIMUM_MILLISECONDS}; <code>0</code> for no limit
+	 */
+	public final AdjacentObjectsRenderer setMaximumIterationCount(final int maximumIterationCount) {
+		this.maximumIterationCount = maximumIterationCount;
+		
+		return this;
+	}
+	
 	public final synchronized List<TextureUnit> getTextureUnits() {
 		if (this.textureUnits == null) {
 			Tools.debugPrint(Thread.currentThread());
@@ -128,6 +182,65 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 		return this.textureUnits;
 	}
 	
+	/**
+	 * Counts the sphere system of the region, its objects and the copies made by the solver,
+	 * plus the extraction of the texture units if they are not loaded yet.
+	 */
+	@Override
+	public final long estimateSolveMemory(final Region region) {
+		if (this.systems.containsKey(region)) {
+			return 0L;
+		}
+		
+		final List<TextureUnit> textureUnits = this.textureUnits;
+		final List<Region> unitRegions = textureUnits != null ? textureUnits.stream().map(TextureUnit::getRegion).collect(toList())
+				: Arrays.stream(this.textures).flatMap(t -> t.getRegions().stream()).collect(toList());
+		final double area = region.computeArea();
+		long result = 0L;
+		
+		for (int i = 0; i < this.unitAmounts.length; ++i) {
+			result += (long) (this.unitAmounts[i] * area /
+					(square(this.collisionableRadius) * unitRegions.get(i).computeArea())) * SOLVER_BYTES_PER_SPHERE;
+		}
+		
+		if (textureUnits == null) {
+			// Each unit is extracted into an ARGB image and a binary mask
+			result += unitRegions.stream().map(r -> r.getGeometry().getBounds()).mapToLong(b -> 5L * b.width * b.height).sum();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Counts the transformed copy that Java2D may make of the largest sprite.
+	 */
+	@Override
+	public final long estimateRenderMemory(final int tileWidth, final int tileHeight) {
+		return 4L * this.getTextureUnits().stream().mapToLong(
+				u -> square(u.getImage().getWidth()) + square(u.getImage().getHeight())).max().orElse(0L);
+	}
+	
+	/**
+	 * Calls {@link SphereSystem#update2()} and records it as a {@link GenerationEvents.SolverIteration}.
+	 */
+	static final double update(final SphereSystem system, final Region region, final int iteration) {
+		final GenerationEvents.SolverIteration event = new GenerationEvents.SolverIteration();
+		
+		event.begin();
+		
+		final double result = system.update2();
+		
+		if (event.shouldCommit()) {
+			event.region = region.getLabel();
+			event.sphereCount = system.getSphereCount();
+			event.iteration = iteration;
+			event.residual = result;
+			event.commit();
+		}
+		
+		return result;
+	}
+	
 	public static final float ratio(final float minimum, final float maximum, final float value) {
 		return value < minimum ? 0F : maximum < value ? 1F : (value - minimum) / (maximum - minimum);
 	}
@@ -146,6 +259,7 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 			
 			Tools.debugPrint(region.getGeometry().getBounds(), this.systems.size());
 			
+			final SplittableRandom random = new SplittableRandom(Seeds.regionSeed(this.seed, region));
 			final List<Point2D> regionVertices = new ArrayList<>();
 			final Rectangle bounds = region.getGeometry().getBounds();
 			final double area = region.computeArea();
@@ -178,11 +292,11 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 					final double radius = collisionRadii[i];
 					
 					for (int j = 0; j < unitCounts[i]; ++j) {
-						final double centerR = maxR * sqrt(RANDOM.nextDouble());
-						final double centerA = RANDOM.nextDouble() * 2.0 * PI;
+						final double centerR = maxR * sqrt(random.nextDouble());
+						final double centerA = random.nextDouble() * 2.0 * PI;
 						final int sphereId = system.newSphere(bounds.getCenterX() + centerR * cos(centerA),
 								bounds.getCenterY() + centerR * sin(centerA), 0.0, radius, 0);
-						objects.add(new TextureObject(i, sphereId, 2.0 * PI * RANDOM.nextDouble()));
+						objects.add(new TextureObject(i, sphereId, 2.0 * PI * random.nextDouble()));
 					}
 				}
 			}
@@ -196,17 +310,22 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 			
 			Tools.debugPrint(Thread.currentThread(), new Date(timer.tic()));
 			
-			wrangleSpheres(system, region, regionVertices);
-			d = system.update2();
+			int iterationCount = 1;
+			
+			wrangleSpheres(system, region, regionVertices, random);
+			d = update(system, region, iterationCount);
 			
 			Tools.debugPrint(Thread.currentThread(), d, timer.toc(), goodEnough);
 			
-			while (goodEnough < d && timer.toc() < CONSTRAINT_SOLVER_MAXIMUM_MILLISECONDS) {
+			while (goodEnough < d && timer.toc() < CONSTRAINT_SOLVER_MAXIMUM_MILLISECONDS
+					&& (this.maximumIterationCount == 0 || iterationCount < this.maximumIterationCount)) {
 				monitor.ping(d + "\r");
-				wrangleSpheres(system, region, regionVertices);
-				d = system.update2();
+				wrangleSpheres(system, region, regionVertices, random);
+				d = update(system, region, ++iterationCount);
 			}
 			
+			GenerationMetrics.getInstance().solved(region, system.getSphereCount(), iterationCount, d, timer.toc());
+			
 			if (goodEnough < d) {
 				Tools.debugPrint(Thread.currentThread(), "Constraint solver timed out");
 			}
@@ -220,6 +339,51 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 			
 			return region.getGeometry().contains(x, y);
 		}).collect(toList()));
+		this.getObjectIndices().put(region, this.newObjectIndex(region));
+		
+		return result;
+	}
+	
+	public final synchronized Map<Region, BucketGrid> getObjectIndices() {
+		if (this.objectIndices == null) {
+			this.objectIndices = synchronizedMap(new HashMap<>());
+		}
+		
+		return this.objectIndices;
+	}
+	
+	public final BucketGrid getObjectIndex(final Region region) {
+		return this.getObjectIndices().computeIfAbsent(region, this::newObjectIndex);
+	}
+	
+	final BucketGrid newObjectIndex(final Region region) {
+		final SphereSystem system = this.systems.get(region);
+		final List<TextureUnit> textureUnits = this.getTextureUnits();
+		
+		return new BucketGrid(this.objects.get(region).stream().map(o -> {
+			final BufferedImage image = textureUnits.get(o.getUnitId()).getImage();
+			// Padded so that the sprite fits in any orientation
+			final double r = sqrt(square(image.getWidth()) + square(image.getHeight())) / 2.0;
+			final double x = system.getSphereX(o.getSphereId());
+			final double y = system.getSphereY(o.getSphereId());
+			final int left = (int) floor(x - r);
+			final int top = (int) floor(y - r);
+			
+			return new Rectangle(left, top, (int) ceil(x + r) - left + 1, (int) ceil(y + r) - top + 1);
+		}).collect(toList()), OBJECT_INDEX_CELL_SIZE);
+	}
+	
+	@Override
+	public final Rectangle getBounds(final Region region) {
+		final Rectangle result = region.getGeometry().getBounds();
+		
+		if (!this.getTextureUnits().isEmpty()) {
+			// Objects are centered inside the region but their sprites may stick out in any orientation
+			final int margin = (int) ceil(this.getTextureUnits().stream().mapToDouble(
+					u -> sqrt(square(u.getImage().getWidth()) + square(u.getImage().getHeight())) / 2.0).max().orElse(0.0));
+			
+			result.grow(margin, margin);
+		}
 		
 		return result;
 	}
@@ -230,12 +394,13 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 		final SphereSystem system = this.systems.get(region);
 		final List<TextureObject> objects = this.objects.get(region);
 		
-		if (this.textures.length == 0) {
+		if (this.getTextureUnits().isEmpty()) {
 			RegionRenderer.DEFAULT.render(region, buffer, tileX, tileY, optimalTileWidth, optimalTileHeight);
 		} else {
 			final List<TextureUnit> textureUnits = this.getTextureUnits();
 			final AffineTransform transform = new AffineTransform();
-			final Consumer<? super TextureObject> action = o -> {
+			final IntConsumer action = i -> {
+				final TextureObject o = objects.get(i);
 				final double x = system.getSphereX(o.getSphereId());
 				final double y = system.getSphereY(o.getSphereId());
 				final TextureUnit unit = textureUnits.get(o.getUnitId());
@@ -249,12 +414,72 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 				buffer.getGraphics().drawImage(image, transform, null);
 			};
 			
-			objects.forEach(action);
+			for (final int i : this.getObjectIndex(region).query(ModelRenderer.getVisibleBounds(buffer))) {
+				action.accept(i);
+			}
+		}
+	}
+	
+	/**
+	 * Visits the objects of <code>region</code> in order, with the center of their sprite in model space;
+	 * visits nothing if the layout of <code>region</code> is not solved.
+	 */
+	public final void forEachObject(final Region region, final ObjectVisitor visitor) {
+		final SphereSystem system = this.systems.get(region);
+		final List<TextureObject> objects = this.objects.get(region);
+		
+		if (system == null || objects == null) {
+			return;
+		}
+		
+		for (final TextureObject o : objects) {
+			visitor.object(system.getSphereX(o.getSphereId()), system.getSphereY(o.getSphereId()), o.getUnitId(), o.getOrientation());
+		}
+	}
+	
+	@Override
+	public final Collection<String> getObjectLabels() {
+		return this.getTextureUnits().stream().map(u -> u.getRegion().getLabel()).collect(toCollection(TreeSet::new));
+	}
+	
+	/**
+	 * Fills the region with its label, then the outline of each object, as in its texture model, with the label of its unit.
+	 */
+	@Override
+	public final void renderLabels(final Region region, final Canvas buffer, final Map<String, Color> labelColors,
+			final int tileX, final int tileY, final int optimalTileWidth, final int optimalTileHeight) {
+		RegionRenderer.super.renderLabels(region, buffer, labelColors, tileX, tileY, optimalTileWidth, optimalTileHeight);
+		
+		if (!this.getTextureUnits().isEmpty()) {
+			final SphereSystem system = this.systems.get(region);
+			final List<TextureObject> objects = this.objects.get(region);
+			final List<TextureUnit> textureUnits = this.getTextureUnits();
+			final Graphics2D g = buffer.getGraphics();
+			final AffineTransform transform = new AffineTransform();
+			
+			for (final int i : this.getObjectIndex(region).query(ModelRenderer.getVisibleBounds(buffer))) {
+				final TextureObject o = objects.get(i);
+				final double x = system.getSphereX(o.getSphereId());
+				final double y = system.getSphereY(o.getSphereId());
+				final TextureUnit unit = textureUnits.get(o.getUnitId());
+				final BufferedImage image = unit.getImage();
+				final Rectangle bounds = unit.getRegion().getGeometry().getBounds();
+				final double w = image.getWidth() / 2.0;
+				final double h = image.getHeight() / 2.0;
+				
+				// Same transform as in render(), applied to the geometry the sprite was extracted from
+				transform.setToTranslation(x - w, y - h);
+				transform.rotate(o.getOrientation(), w, h);
+				transform.translate(-bounds.x, -bounds.y);
+				
+				g.setColor(labelColors.get(unit.getRegion().getLabel()));
+				g.fill(transform.createTransformedShape(unit.getRegion().getGeometry()));
+			}
 		}
 	}
 	
 	public final double wrangleSpheres(SphereSystem system, final Region region,
-			final List<Point2D> regionVertices) {
+			final List<Point2D> regionVertices, final SplittableRandom random) {
 		final int n = system.getSphereCount();
 		double result = 0.0;
 		final Point2D center = region.computeCenter();
@@ -269,8 +494,8 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 				final Point2D nearestRegionVertex = regionVertices.stream().reduce((p1, p2) -> p1.distance(x, y) <= p2.distance(x, y) ? p1 : p2).get();
 				result = max(result, nearestRegionVertex.distance(x, y));
 				
-				final double r = maxR * sqrt(RANDOM.nextDouble());
-				final double a = RANDOM.nextDouble() * 2.0 * PI;
+				final double r = maxR * sqrt(random.nextDouble());
+				final double a = random.nextDouble() * 2.0 * PI;
 				
 				system.setSphereX(i, center.getX() + r * cos(a));
 				system.setSphereY(i, center.getY() + r * sin(a));
@@ -285,6 +510,13 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 	 */
 	private static final long serialVersionUID = 3370782935873969191L;
 	
+	public static final int OBJECT_INDEX_CELL_SIZE = 256;
+	
+	/**
+	 * Coordinates, copies made by {@link SphereSystem#update2()}, texture object and index entry.
+	 */
+	public static final long SOLVER_BYTES_PER_SPHERE = 256L;
+	
 	public static final double[] newProportions(final List<TextureUnit> textureUnits) {
 		final int n = textureUnits.size();
 		final double[] result = new double[n];
@@ -303,21 +535,13 @@ public final class AdjacentObjectsRenderer implements RegionRenderer {
 		return result;
 	}
 	
-	public static final double[] newProportions(final int n) {
-		final double[] result = new double[n];
-		double sum = 0.0;
-		
-		for (int i = 0; i < n; ++i) {
-			sum += result[i] = RANDOM.nextDouble();
-		}
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	public static abstract interface ObjectVisitor {
 		
-		if (sum != 0.0) {
-			for (int i = 0; i < n; ++i) {
-				result[i] /= sum;
-			}
-		}
+		public abstract void object(double x, double y, int unitId, double orientation);
 		
-		return result;
 	}
 	
 	/**
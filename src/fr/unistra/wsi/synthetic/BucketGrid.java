@@ -0,0 +1,165 @@
+package fr.unistra.wsi.synthetic;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.awt.Rectangle;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import multij.primitivelists.IntList;
+
+/**
+ * @author ga (creation 2026-10-17)
+ */
+public final class BucketGrid implements Serializable {
+	
+	private final int[] boxes;
+	
+	private final int left;
+	
+	private final int top;
+	
+	private final int cellSize;
+	
+	private final int columnCount;
+	
+	private final int rowCount;
+	
+	private final int[] cellStarts;
+	
+	private final int[] cellIds;
+	
+	public BucketGrid(final List<Rectangle> boxes, final int cellSize) {
+		final int n = boxes.size();
+		final Rectangle bounds = new Rectangle();
+		
+		this.boxes = new int[4 * n];
+		this.cellSize = cellSize;
+		
+		for (int i = 0; i < n; ++i) {
+			final Rectangle box = boxes.get(i);
+			
+			this.boxes[4 * i + 0] = box.x;
+			this.boxes[4 * i + 1] = box.y;
+			this.boxes[4 * i + 2] = box.width;
+			this.boxes[4 * i + 3] = box.height;
+			
+			if (!box.isEmpty()) {
+				if (bounds.isEmpty()) {
+					bounds.setBounds(box);
+				} else {
+					bounds.add(box);
+				}
+			}
+		}
+		
+		this.left = bounds.x;
+		this.top = bounds.y;
+		this.columnCount = max(1, (bounds.width + cellSize - 1) / cellSize);
+		this.rowCount = max(1, (bounds.height + cellSize - 1) / cellSize);
+		this.cellStarts = new int[this.columnCount * this.rowCount + 1];
+		
+		for (int i = 0; i < n; ++i) {
+			this.forEachCellOf(i, cell -> ++this.cellStarts[cell + 1]);
+		}
+		
+		for (int cell = 1; cell < this.cellStarts.length; ++cell) {
+			this.cellStarts[cell] += this.cellStarts[cell - 1];
+		}
+		
+		this.cellIds = new int[this.cellStarts[this.cellStarts.length - 1]];
+		
+		{
+			final int[] cursors = Arrays.copyOf(this.cellStarts, this.cellStarts.length - 1);
+			
+			for (int i = 0; i < n; ++i) {
+				final int id = i;
+				
+				this.forEachCellOf(i, cell -> this.cellIds[cursors[cell]++] = id);
+			}
+		}
+	}
+	
+	public final int getItemCount() {
+		return this.boxes.length / 4;
+	}
+	
+	/**
+	 * @return the ids of the boxes intersecting <code>area</code>, in increasing order
+	 */
+	public final int[] query(final Rectangle area) {
+		final IntList result = new IntList();
+		
+		if (!area.isEmpty()) {
+			final int firstColumn = this.column(area.x);
+			final int lastColumn = this.column(area.x + area.width - 1);
+			final int firstRow = this.row(area.y);
+			final int lastRow = this.row(area.y + area.height - 1);
+			
+			for (int row = firstRow; row <= lastRow; ++row) {
+				for (int column = firstColumn; column <= lastColumn; ++column) {
+					final int cell = row * this.columnCount + column;
+					
+					for (int j = this.cellStarts[cell]; j < this.cellStarts[cell + 1]; ++j) {
+						final int i = this.cellIds[j];
+						final int x = this.boxes[4 * i + 0];
+						final int y = this.boxes[4 * i + 1];
+						
+						// Only report a box from the first visited cell it occupies to avoid duplicates
+						if (this.intersects(i, area) && this.column(max(x, area.x)) == column && this.row(max(y, area.y)) == row) {
+							result.add(i);
+						}
+					}
+				}
+			}
+		}
+		
+		return result.sort().toArray();
+	}
+	
+	private final void forEachCellOf(final int i, final IntConsumer action) {
+		if (this.boxes[4 * i + 2] <= 0 || this.boxes[4 * i + 3] <= 0) {
+			return;
+		}
+		
+		final int firstColumn = this.column(this.boxes[4 * i + 0]);
+		final int lastColumn = this.column(this.boxes[4 * i + 0] + this.boxes[4 * i + 2] - 1);
+		final int firstRow = this.row(this.boxes[4 * i + 1]);
+		final int lastRow = this.row(this.boxes[4 * i + 1] + this.boxes[4 * i + 3] - 1);
+		
+		for (int row = firstRow; row <= lastRow; ++row) {
+			for (int column = firstColumn; column <= lastColumn; ++column) {
+				action.accept(row * this.columnCount + column);
+			}
+		}
+	}
+	
+	private final boolean intersects(final int i, final Rectangle area) {
+		final long x = this.boxes[4 * i + 0];
+		final long y = this.boxes[4 * i + 1];
+		
+		return x < (long) area.x + area.width && area.x < x + this.boxes[4 * i + 2]
+				&& y < (long) area.y + area.height && area.y < y + this.boxes[4 * i + 3];
+	}
+	
+	private final int column(final int x) {
+		return clamp(Math.floorDiv(x - this.left, this.cellSize), this.columnCount);
+	}
+	
+	private final int row(final int y) {
+		return clamp(Math.floorDiv(y - this.top, this.cellSize), this.rowCount);
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	private static final long serialVersionUID = -3839519330497096441L;
+	
+	static final int clamp(final int value, final int count) {
+		return min(count - 1, max(0, value));
+	}
+	
+}
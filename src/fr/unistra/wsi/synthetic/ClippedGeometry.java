@@ -0,0 +1,238 @@
+package fr.unistra.wsi.synthetic;
+
+import static java.lang.Double.NEGATIVE_INFINITY;
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.floor;
+import static java.lang.Math.round;
+import static multij.tools.Tools.cast;
+
+import imj2.core.IMJCoreTools;
+import imj2.tools.Canvas;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import multij.tools.IllegalInstantiationException;
+
+/**
+ * Geometry of regions flattened and clipped to tile rows, then to tiles, so that filling a region in a tile
+ * only rasterizes the short local polygon instead of walking the whole outline.
+ * <br>Each row is clipped once, by the first tile that needs it, and kept in the {@link IMJCoreTools} cache
+ * together with the tiles already clipped from it.
+ * <br>Clipping is done subpath by subpath in linear time (Sutherland-Hodgman), which keeps the orientation of the subpaths
+ * and therefore the non-zero winding of the geometry; it may leave degenerate edges along the clip bounds, which cover no pixel.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class ClippedGeometry {
+	
+	private ClippedGeometry() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @return the part of the geometry of <code>region</code> inside the tile drawn by <code>buffer</code>, in model space,
+	 * to be filled with the transform of <code>buffer</code>
+	 */
+	public static final Shape get(final Region region, final Canvas buffer, final int optimalTileWidth, final int optimalTileHeight) {
+		final AffineTransform transform = buffer.getGraphics().getTransform();
+		final Area geometry = region.getGeometry();
+		
+		if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+			return geometry;
+		}
+		
+		final double scale = transform.getScaleX();
+		final Rectangle2D tile = new Rectangle2D.Double(-transform.getTranslateX() / scale, -transform.getTranslateY() / scale,
+				optimalTileWidth / scale, optimalTileHeight / scale);
+		final Rectangle2D bounds = geometry.getBounds2D();
+		
+		if (tile.contains(bounds)) {
+			return geometry;
+		}
+		
+		if (!tile.intersects(bounds)) {
+			return EMPTY;
+		}
+		
+		final double columnOriginX = tile.getX() - floor(tile.getX() / tile.getWidth()) * tile.getWidth();
+		final Row row = IMJCoreTools.cache(new RowKey(region, tile.getY(), tile.getHeight(), columnOriginX, tile.getWidth()),
+				() -> new Row(clip(geometry.getPathIterator(null, FLATNESS),
+						NEGATIVE_INFINITY, tile.getY(), POSITIVE_INFINITY, tile.getMaxY())));
+		
+		return row.getTile(round((tile.getX() - columnOriginX) / tile.getWidth()), tile);
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	public static final double FLATNESS = 0.25;
+	
+	static final Shape EMPTY = new Path2D.Double();
+	
+	/**
+	 * @param path
+	 * <br>Made of straight segments only
+	 * @return the closed subpaths of <code>path</code> clipped to the box (<code>minX</code>, <code>minY</code>, <code>maxX</code>, <code>maxY</code>),
+	 * with the winding rule of <code>path</code>
+	 */
+	public static final Path2D.Double clip(final PathIterator path, final double minX, final double minY,
+			final double maxX, final double maxY) {
+		final Path2D.Double result = new Path2D.Double(path.getWindingRule());
+		final double[] segment = new double[6];
+		double[] subpath = new double[64];
+		int n = 0;
+		
+		for (; !path.isDone(); path.next()) {
+			final int type = path.currentSegment(segment);
+			
+			if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE) {
+				append(result, subpath, n, minX, minY, maxX, maxY);
+				n = 0;
+			}
+			
+			if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+				if (subpath.length < n + 2) {
+					subpath = Arrays.copyOf(subpath, 2 * subpath.length);
+				}
+				
+				subpath[n++] = segment[0];
+				subpath[n++] = segment[1];
+			} else if (type != PathIterator.SEG_CLOSE) {
+				throw new IllegalArgumentException("Path not flattened");
+			}
+		}
+		
+		append(result, subpath, n, minX, minY, maxX, maxY);
+		
+		return result;
+	}
+	
+	private static final void append(final Path2D.Double path, final double[] polygon, final int n,
+			final double minX, final double minY, final double maxX, final double maxY) {
+		double[] clipped = polygon;
+		int m = n;
+		
+		// Each edge of the box, as (coordinate, bound, keeping the greater side)
+		m = clip(clipped, m, clipped = new double[2 * m + 4], 0, minX, true);
+		m = clip(clipped, m, clipped = new double[2 * m + 4], 0, maxX, false);
+		m = clip(clipped, m, clipped = new double[2 * m + 4], 1, minY, true);
+		m = clip(clipped, m, clipped = new double[2 * m + 4], 1, maxY, false);
+		
+		if (6 <= m) {
+			path.moveTo(clipped[0], clipped[1]);
+			
+			for (int i = 2; i < m; i += 2) {
+				path.lineTo(clipped[i], clipped[i + 1]);
+			}
+			
+			path.closePath();
+		}
+	}
+	
+	/**
+	 * @return the number of coordinates written into <code>output</code>
+	 */
+	private static final int clip(final double[] input, final int n, final double[] output,
+			final int coordinate, final double bound, final boolean greater) {
+		if (Double.isInfinite(bound)) {
+			System.arraycopy(input, 0, output, 0, n);
+			
+			return n;
+		}
+		
+		int result = 0;
+		
+		for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+			final double current = input[i + coordinate];
+			final double previous = input[j + coordinate];
+			final boolean currentInside = greater ? bound <= current : current <= bound;
+			final boolean previousInside = greater ? bound <= previous : previous <= bound;
+			
+			if (currentInside != previousInside) {
+				final double t = (bound - previous) / (current - previous);
+				
+				output[result + coordinate] = bound;
+				output[result + 1 - coordinate] = input[j + 1 - coordinate] + t * (input[i + 1 - coordinate] - input[j + 1 - coordinate]);
+				result += 2;
+			}
+			
+			if (currentInside) {
+				output[result++] = input[i];
+				output[result++] = input[i + 1];
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class Row {
+		
+		private final Path2D.Double geometry;
+		
+		private final Map<Long, Shape> tiles;
+		
+		Row(final Path2D.Double geometry) {
+			this.geometry = geometry;
+			this.tiles = new ConcurrentHashMap<>();
+		}
+		
+		final Shape getTile(final long column, final Rectangle2D tile) {
+			return this.tiles.computeIfAbsent(column, k -> clip(this.geometry.getPathIterator(null),
+					tile.getX(), NEGATIVE_INFINITY, tile.getMaxX(), POSITIVE_INFINITY));
+		}
+		
+	}
+	
+	/**
+	 * Compares regions by identity, because regions are compared by geometry otherwise.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class RowKey {
+		
+		private final Region region;
+		
+		private final double y;
+		
+		private final double height;
+		
+		private final double columnOriginX;
+		
+		private final double columnWidth;
+		
+		RowKey(final Region region, final double y, final double height, final double columnOriginX, final double columnWidth) {
+			this.region = region;
+			this.y = y;
+			this.height = height;
+			this.columnOriginX = columnOriginX;
+			this.columnWidth = columnWidth;
+		}
+		
+		@Override
+		public final int hashCode() {
+			return System.identityHashCode(this.region) + Double.hashCode(this.y) + 31 * Double.hashCode(this.height)
+					+ 961 * Double.hashCode(this.columnOriginX) + Double.hashCode(this.columnWidth);
+		}
+		
+		@Override
+		public final boolean equals(final Object object) {
+			final RowKey that = cast(this.getClass(), object);
+			
+			return that != null && this.region == that.region && this.y == that.y && this.height == that.height
+					&& this.columnOriginX == that.columnOriginX && this.columnWidth == that.columnWidth;
+		}
+		
+	}
+	
+}
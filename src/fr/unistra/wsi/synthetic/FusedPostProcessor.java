@@ -0,0 +1,137 @@
+package fr.unistra.wsi.synthetic;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static fr.unistra.wsi.synthetic.Seeds.tileSeed;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.util.SplittableRandom;
+
+/**
+ * Applies blur, color jitter and noise in a single pass over the tile bytes.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class FusedPostProcessor implements TilePostProcessor {
+	
+	private final long seed;
+	
+	private final boolean blur;
+	
+	private final byte[][] colorTables;
+	
+	private final boolean noise;
+	
+	/**
+	 * @param seed
+	 * <br>Determines the color jitter and, together with the level and the tile coordinates, the noise
+	 * @param blur
+	 * <br>Applies a 3x3 binomial filter
+	 * @param colorJitter
+	 * <br>Maximum offset added to each channel of the whole slide
+	 * @param noise
+	 * <br>Replaces up to 3 low bits of each channel with random bits
+	 */
+	public FusedPostProcessor(final long seed, final boolean blur, final int colorJitter, final boolean noise) {
+		this.seed = seed;
+		this.blur = blur;
+		this.colorTables = new byte[3][256];
+		this.noise = noise;
+		
+		final SplittableRandom random = new SplittableRandom(seed);
+		
+		for (final byte[] table : this.colorTables) {
+			final int offset = colorJitter == 0 ? 0 : random.nextInt(-colorJitter, colorJitter + 1);
+			
+			for (int value = 0; value < 256; ++value) {
+				table[value] = (byte) min(255, max(0, value + offset));
+			}
+		}
+	}
+	
+	public final long getSeed() {
+		return this.seed;
+	}
+	
+	@Override
+	public final void process(final BufferedImage tile, final int lod, final int tileX, final int tileY) {
+		final WritableRaster raster = tile.getRaster();
+		final int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+		final int offset = -raster.getSampleModelTranslateY() * stride - 3 * raster.getSampleModelTranslateX();
+		final byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+		final int w = tile.getWidth();
+		final int h = tile.getHeight();
+		final int rowLength = 3 * w;
+		final SplittableRandom random = new SplittableRandom(tileSeed(this.seed, lod, tileX, tileY));
+		final byte[][] colorTables = this.colorTables;
+		final byte[][] rows = ROWS.get();
+		
+		if (this.blur && rows[0].length < rowLength) {
+			rows[0] = new byte[rowLength];
+			rows[1] = new byte[rowLength];
+		}
+		
+		for (int y = 0; y < h; ++y) {
+			final int row = offset + y * stride;
+			final byte[] currentRow = rows[1];
+			final byte[] previousRow = y == 0 ? currentRow : rows[0];
+			
+			if (this.blur) {
+				// The rows above have already been modified, so the filter reads the original ones from the scratch rows
+				System.arraycopy(data, row, currentRow, 0, rowLength);
+			}
+			
+			long bits = 0L;
+			
+			for (int x = 0, i = 0; x < w; ++x) {
+				if (this.noise && (x & 3) == 0) {
+					bits = random.nextLong();
+				}
+				
+				for (int channel = 0; channel < 3; ++channel, ++i) {
+					int value;
+					
+					if (this.blur) {
+						final int left = 0 < x ? i - 3 : i;
+						final int right = x + 1 < w ? i + 3 : i;
+						final int nextRow = y + 1 < h ? row + stride : row;
+						final int nextValue = y + 1 < h
+								? (data[nextRow + left] & 0xFF) + 2 * (data[nextRow + i] & 0xFF) + (data[nextRow + right] & 0xFF)
+								: (currentRow[left] & 0xFF) + 2 * (currentRow[i] & 0xFF) + (currentRow[right] & 0xFF);
+						
+						value = ((previousRow[left] & 0xFF) + 2 * (previousRow[i] & 0xFF) + (previousRow[right] & 0xFF)
+								+ 2 * ((currentRow[left] & 0xFF) + 2 * (currentRow[i] & 0xFF) + (currentRow[right] & 0xFF))
+								+ nextValue + 8) >> 4;
+					} else {
+						value = data[row + i] & 0xFF;
+					}
+					
+					value = colorTables[channel][value] & 0xFF;
+					
+					if (this.noise) {
+						final int q = (int) bits & 3;
+						
+						value = (value & (~0 << q)) | ((int) (bits >>> 2) & ((1 << q) - 1));
+						bits >>>= 5;
+					}
+					
+					data[row + i] = (byte) value;
+				}
+			}
+			
+			rows[1] = rows[0];
+			rows[0] = currentRow;
+		}
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	private static final long serialVersionUID = -6117566315271930167L;
+	
+	static final ThreadLocal<byte[][]> ROWS = ThreadLocal.withInitial(() -> new byte[2][0]);
+	
+}
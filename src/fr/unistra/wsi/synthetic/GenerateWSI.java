@@ -1,35 +1,25 @@
 package fr.unistra.wsi.synthetic;
 
-import static imj2.tools.IMJTools.awtImage;
 import static java.lang.Double.parseDouble;
-import static java.lang.Math.min;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
 import static multij.tools.Tools.array;
 import static multij.tools.Tools.baseName;
 import static multij.tools.Tools.debugPrint;
-import static multij.tools.Tools.unchecked;
-import static multij.xml.XMLTools.getNode;
 import static multij.xml.XMLTools.getNodes;
 import static multij.xml.XMLTools.getNumber;
 import static multij.xml.XMLTools.parse;
 
-import imj2.core.ConcreteImage2D;
-import imj2.core.IMJCoreTools;
-import imj2.core.Image;
-import imj2.core.Image2D;
-import imj2.core.LinearIntImage;
-import imj2.core.SubsampledImage2D;
-import imj2.core.TiledImage2D;
-import imj2.tools.Canvas;
-import imj2.tools.IMJTools;
-import imj2.tools.IMJTools.TileProcessor;
-import imj2.tools.InputSource;
+import imj2.tools.MemoryBudget;
 import imj2.tools.OutputSource;
+import imj2.tools.PyramidBuilder;
+import imj2.tools.TileCodec;
 import imj2.zipslideviewer.ZipSlideViewer;
 
-import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -38,19 +28,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.TreeMap;
-import java.util.concurrent.Callable;
-
-import javax.imageio.ImageIO;
+import java.util.Timer;
 
 import multij.tools.CommandLineArgumentsParser;
 import multij.tools.ConsoleMonitor;
 import multij.tools.IllegalInstantiationException;
-import multij.tools.TaskManager;
 import multij.tools.TicToc;
 import multij.tools.Tools;
 import multij.xml.XMLTools;
@@ -68,8 +57,6 @@ public final class GenerateWSI {
 		throw new IllegalInstantiationException();
 	}
 	
-	static final Random RANDOM = new Random(1L);
-	
 	static final double SCALE = 1.0;
 	
 	static final long CONSTRAINT_SOLVER_MAXIMUM_MILLISECONDS = 120_000L;
@@ -80,6 +67,13 @@ public final class GenerateWSI {
 	
 	static final File RENDERERS_FILE = new File("renderers.jo");
 	
+	static final int MAXIMUM_LOD = 7;
+	
+	/**
+	 * Appended to the output base and to the image name of the label masks.
+	 */
+	static final String LABELS_SUFFIX = "_labels";
+	
 	/**
 	 * @param commandLineArguments
 	 * <br>Must not be null
@@ -89,483 +83,475 @@ public final class GenerateWSI {
 		final File modelFile = new File(arguments.get("model",
 				ModelMaker.preferences.get(ModelMaker.MODEL_FILE_KEY, ModelMaker.MODEL_FILE_DEFAULT_PATH)));
 		final String outputBase = arguments.get("output", baseName(modelFile.getPath()));
-		final File temporaryDirectory = new File(outputBase);
-		final File outputFile = new File(outputBase + ".zip");
+		final String[] shard = arguments.get("shard", "0/1").split("/");
+		final int shardIndex = Integer.parseInt(shard[0]);
+		final int shardCount = Integer.parseInt(shard[1]);
+		final String shardBase = shardCount == 1 ? outputBase : shardBase(outputBase, shardIndex, shardCount);
+		final String outputExtension = "." + arguments.get("outputFormat", "zip");
+		final int[] roi = arguments.get("roi", new int[0]);
+		final int roiLOD = arguments.get("roiLOD", 0)[0];
+		final String[] outputBases = roi.length == 0 ? array(shardBase) : new String[roi.length / 4];
 		final String outputImageName = new File(outputBase).getName();
 		final Model model = ModelMaker.readModel(modelFile);
 		final int tileWidth = arguments.get("tileWidth", 512)[0];
 		final int tileHeight = arguments.get("tileHeight", tileWidth)[0];
-		final boolean showResult = arguments.get("show", 1)[0] != 0;
+		final boolean deepZoom = isDeepZoom(outputExtension);
+		final boolean showResult = arguments.get("show", shardCount == 1 && !deepZoom ? 1 : 0)[0] != 0;
 		final String rendererXMLPath = arguments.get("renderer", "");
-		final TicToc timer = new TicToc();
-		
-		if (!outputFile.exists()) {
-			System.out.println("Generating WSI... " + new Date(timer.tic()));
-			process(model, tileWidth, tileHeight, temporaryDirectory, outputImageName, rendererXMLPath);
-			subsample(temporaryDirectory, outputImageName);
-			writeWSI(temporaryDirectory, outputFile);
-			System.out.println("WSI generated in " + timer.toc() + " ms");
+		final boolean solveOnly = arguments.get("solveOnly", 0)[0] != 0;
+		final boolean exportingObjects = arguments.get("objects", 0)[0] != 0;
+		final File objectsFile = new File(outputBase + GroundTruthExport.FILE_SUFFIX);
+		final long seed = arguments.get("seed", 1)[0];
+		final TilePostProcessor postProcessor = new FusedPostProcessor(seed,
+				arguments.get("blur", 0)[0] != 0, arguments.get("colorJitter", 0)[0], arguments.get("noise", 1)[0] != 0);
+		final TileCodec codec = newTileCodec(arguments.get("tileFormat", TileCodec.DEFAULT_FORMAT),
+				arguments.get("quality", "" + TileCodec.DEFAULT_JPEG_QUALITY), arguments.get("chromaSubsampling", 1)[0] != 0);
+		final TilePipeline.Settings settings = new TilePipeline.Settings();
+		
+		GenerationMetrics.getInstance().register();
+		MemoryBudget.getInstance().setCapacity((long) arguments.get("memoryBudget",
+				(int) (Runtime.getRuntime().maxMemory() / 4L * 3L >> 20))[0] << 20);
+		settings.setRenderThreadCount(arguments.get("renderThreads", settings.getRenderThreadCount())[0])
+				.setEncodeThreadCount(arguments.get("encodeThreads", settings.getEncodeThreadCount())[0])
+				.setWriteThreadCount(arguments.get("writeThreads", settings.getWriteThreadCount())[0]);
+		settings.setQueueCapacity(arguments.get("queueCapacity", 2 * settings.getRenderThreadCount())[0]);
+		settings.setShard(shardIndex, shardCount);
+		settings.setBackgroundVariantCount(arguments.get("backgroundVariants", settings.getBackgroundVariantCount())[0]);
+		settings.setSeed(seed);
+		settings.setLabelMasks(arguments.get("labels", 0)[0] != 0);
+		settings.setPaddingTiles(OutputSource.isTiff(outputExtension));
+		
+		if (OutputSource.isTiff(outputExtension) && (1 < shardCount || !"jpg".equals(codec.getFormat()))) {
+			throw new IllegalArgumentException("TIFF output needs JPEG tiles and cannot be sharded");
 		}
 		
-		if (showResult) {
-			ZipSlideViewer.main(array("file", outputFile.getPath()));
+		if (settings.isLabelMasks() && (1 < shardCount || deepZoom)) {
+			throw new IllegalArgumentException("Label masks cannot be sharded or written as DeepZoom");
 		}
-	}
-	
-	public static final ModelRenderer newRenderer(final Model model, final String rendererXMLPath) {
-		if (RENDERERS_FILE.exists()) {
-			final ModelRenderer result = Tools.readObject(RENDERERS_FILE.getPath());
-			
-			if (model.getFile().equals(result.getModel().getFile())) {
-				return result;
+		
+		if (deepZoom) {
+			if (1 < shardCount || tileWidth != tileHeight) {
+				throw new IllegalArgumentException("DeepZoom output needs square tiles and cannot be sharded");
 			}
+			
+			settings.setDeepZoom(arguments.get("overlap", 1)[0]);
 		}
 		
-		final ModelRenderer result = new ModelRenderer(model);
-		final File root = new File(rendererXMLPath).getParentFile();
-		
-		
-		try (final InputStream xmlInputStream = new FileInputStream(rendererXMLPath)) {
-			final Document xml = parse(xmlInputStream);
+		if (solveOnly) {
+			final ModelRenderer renderer = newRenderer(model, rendererXMLPath, seed);
 			
-			for (final Node regionNode : getNodes(xml, "renderer/region")) {
-				final Element regionElement = (Element) regionNode;
-				final String label = regionElement.getAttribute("label");
-				final Element regionRendererElement = (Element) regionElement.getElementsByTagName("*").item(0);
-				
-				Tools.debugPrint(label);
-				
-				if ("adjacentObjects".equals(regionRendererElement.getTagName())) {
-					final double collisionableRadius = parseDouble(select(regionRendererElement.getAttribute("collisionableRadius"), "1.0"));
-					final File[] textures = getNodes(regionRendererElement, "texture").stream().map(n -> new File(root, ((Element) n).getAttribute("file"))).toArray(File[]::new);
-					result.setRegionRenderer(label, new AdjacentObjectsRenderer(collisionableRadius, textures));
-				} else {
-					Tools.debugError("Unknown region renderer:", regionElement.getTagName());
-				}
+			renderer.beforeRender();
+			Tools.writeObject(renderer, RENDERERS_FILE.getPath());
+			
+			if (exportingObjects) {
+				GroundTruthExport.write(renderer, objectsFile, tileWidth, tileHeight);
 			}
 			
-			return result;
-		} catch (final IOException exception) {
-			throw new UncheckedIOException(exception);
+			return;
 		}
-	}
-	
-	public static final String select(final String string1, final String string2) {
-		return string1.isEmpty() ? string2 : string1;
-	}
-	
-	public static final void process(final Model model, final int tileWidth, final int tileHeight,
-			final File temporaryDirectory, final String outputImageName, final String rendererXMLPath) throws IOException {
-		final ConsoleMonitor monitor = new ConsoleMonitor(MONITOR_PERIOD_MILLISECONDS);
-		final TicToc timer = new TicToc();
-		
-		System.out.println("Processing... " + new Date(timer.tic()));
-		
-		final ModelRenderer renderer = newRenderer(model, rendererXMLPath);
-		final Rectangle bounds = model.getBounds();
 		
-		bounds.width *= SCALE;
-		bounds.height *= SCALE;
+		// Read once, because the layout of a real slide is large
+		final ModelRenderer solvedRenderer = 1 < shardCount ? readSolvedRenderer(model, seed) : null;
 		
-		debugPrint(model.getRegions().size(), bounds);
+		if (1 < shardCount && solvedRenderer == null) {
+			throw new IllegalStateException("Shards need the layout of " + model.getFile() + " solved with seed " + seed
+					+ " in " + RENDERERS_FILE + "; run with solveOnly 1 first");
+		}
 		
-		try (final OutputSource output = new OutputSource(temporaryDirectory.getPath())) {
-			try (final OutputStream entryOutput = output.open("metadata.xml")) {
-				final Document metadata = XMLTools.parse("<image micronsPerPixel=\"0.2525\"/>");
-				final Element subImage = (Element) metadata.getDocumentElement().appendChild(metadata.createElement("subimage"));
+		if (roi.length == 0) {
+			if (!new File(shardBase + outputExtension).exists()) {
+				final ModelRenderer renderer = solvedRenderer != null ? solvedRenderer : newRenderer(model, rendererXMLPath, seed);
 				
-				subImage.setAttribute("id", "0");
-				subImage.setAttribute("type", "svs_slide_lod");
-				subImage.setAttribute("width", "" + bounds.width);
-				subImage.setAttribute("height", "" + bounds.height);
-				subImage.setAttribute("tileWidth", "" + tileWidth);
-				subImage.setAttribute("tileHeight", "" + tileHeight);
+				// Shards find the layout in the file exported with solveOnly
+				if (exportingObjects && shardCount == 1) {
+					renderer.beforeRender();
+					GroundTruthExport.write(renderer, objectsFile, tileWidth, tileHeight);
+				}
 				
-				XMLTools.write(metadata, entryOutput, 0);
+				generate(model, renderer, tileWidth, tileHeight, shardBase, outputExtension, outputImageName, postProcessor, codec, settings);
+			}
+		} else {
+			// Each rectangle gives a self-contained WSI, and only the regions they need are solved
+			final List<Rectangle> modelAreas = new ArrayList<>();
+			final int margin = 1 << roiLOD;
+			
+			if (roi.length % 4 != 0) {
+				throw new IllegalArgumentException("roi must be a list of x,y,width,height rectangles");
 			}
 			
+			final Rectangle[] regionsOfInterest = new Rectangle[roi.length / 4];
+			
 			{
-				final TaskManager tasks = new TaskManager(MAXIMUM_CPU_LOAD);
-				final Map<Thread, Canvas> buffers = new HashMap<>();
+				final Rectangle modelBounds = model.getBounds();
+				final Rectangle slideBounds = new Rectangle((int) (modelBounds.x * SCALE), (int) (modelBounds.y * SCALE),
+						(int) (modelBounds.width * SCALE), (int) (modelBounds.height * SCALE));
 				
-				for (int tileYVariable = 0; tileYVariable < bounds.height; tileYVariable += tileHeight) {
-					final int tileY = tileYVariable;
-					final int actualTileHeight = min(tileHeight, bounds.height - tileY);
+				for (int i = 0; i < roi.length; i += 4) {
+					final Rectangle regionOfInterest = new Rectangle(roi[i + 0], roi[i + 1], roi[i + 2], roi[i + 3]).intersection(slideBounds);
 					
-					for (int tileXVariable = 0; tileXVariable < bounds.width; tileXVariable += tileWidth) {
-						final int tileX = tileXVariable;
-						final int actualTileWidth = min(tileWidth, bounds.width - tileX);
-						final String entryName = outputImageName + "_svs0_" + tileX + "_" + tileY + ".jpg";
-						final File entryFile = new File(temporaryDirectory, entryName);
-						
-						if (!entryFile.exists()) {
-							renderer.beforeRender();
-							
-							tasks.submit(new Runnable() {
-								
-								@Override
-								public final void run() {
-									final Canvas buffer = buffers.compute(Thread.currentThread(), (k, v) -> v != null ? v : new Canvas());
-									monitor.ping(tileX + " " + tileY + " / " + bounds.width + " " + bounds.height + " \r");
-									buffer.setFormat(actualTileWidth, actualTileHeight, BufferedImage.TYPE_3BYTE_BGR);
-									
-									final Graphics2D g = buffer.getGraphics();
-									final AffineTransform savedTransform = g.getTransform();
-									
-									g.setColor(new Color(0xFFF3F3F3));
-									g.fillRect(0, 0, actualTileWidth, actualTileHeight);
-									g.translate(-tileX, -tileY);
-									g.scale(SCALE, SCALE);
-									
-									renderer.renderTo(buffer, tileX, tileY, tileWidth, tileHeight);
-									addNoise(buffer.getImage());
-									
-									g.setTransform(savedTransform);
-									
-									try (final OutputStream entryOutput = output.open(entryName)) {
-										ImageIO.write(buffer.getImage(), "jpg", entryOutput);
-									} catch (final IOException exception) {
-										throw unchecked(exception);
-									}
-								}
-								
-							});
-						}
+					if ((regionOfInterest.width >> roiLOD) <= 0 || (regionOfInterest.height >> roiLOD) <= 0) {
+						throw new IllegalArgumentException("roi " + roi[i + 0] + "," + roi[i + 1] + "," + roi[i + 2] + "," + roi[i + 3]
+								+ " does not overlap the slide " + slideBounds.x + "," + slideBounds.y + "," + slideBounds.width + "," + slideBounds.height
+								+ " at level " + roiLOD);
 					}
+					
+					regionsOfInterest[i / 4] = regionOfInterest;
 				}
-				
-				tasks.join();
 			}
-		}
-		
-		monitor.pause();
-		
-		System.out.println("Processing done in " + timer.toc() + " ms");
-	}
-	
-	public static final void addNoise(final BufferedImage image) {
-		final int w = image.getWidth();
-		final int h = image.getHeight();
-		
-		for (int y = 0; y < h; ++y) {
-			for (int x = 0; x < w; ++x) {
-				final int rgb = image.getRGB(x, y);
-				final int alpha = IMJTools.alpha8(rgb);
-				final int red, green, blue;
-				
-				{
-					final int q = RANDOM.nextInt(4);
-					final int mask = (~0) << q;
-					red = (IMJTools.red8(rgb) & mask) | RANDOM.nextInt(1 << q);
-				}
-				{
-					final int q = RANDOM.nextInt(4);
-					final int mask = (~0) << q;
-					green = (IMJTools.green8(rgb) & mask) | RANDOM.nextInt(1 << q);
-				}
-				{
-					final int q = RANDOM.nextInt(4);
-					final int mask = (~0) << q;
-					blue = (IMJTools.blue8(rgb) & mask) | RANDOM.nextInt(1 << q);
-				}
+			
+			final ModelRenderer renderer = solvedRenderer != null ? solvedRenderer : newRenderer(model, rendererXMLPath, seed);
+			
+			for (int i = 0; i < regionsOfInterest.length; ++i) {
+				final Rectangle regionOfInterest = regionsOfInterest[i];
 				
-				image.setRGB(x, y, IMJTools.a8r8g8b8(alpha, red, green, blue));
+				outputBases[i] = outputBase + ".roi" + i;
+				modelAreas.add(new Rectangle((int) floor(regionOfInterest.x / SCALE) - margin, (int) floor(regionOfInterest.y / SCALE) - margin,
+						(int) ceil(regionOfInterest.width / SCALE) + 2 * margin, (int) ceil(regionOfInterest.height / SCALE) + 2 * margin));
 			}
-		}
-	}
-	
-	public static final void writeWSI(final File temporaryDirectory,
-			final File outputFile) throws IOException {
-		final ConsoleMonitor monitor = new ConsoleMonitor(MONITOR_PERIOD_MILLISECONDS);
-		final TicToc timer = new TicToc();
-		
-		if (!outputFile.exists()) {
-			System.out.println("Writing " + outputFile + "... " + new Date(timer.tic()));
 			
-			try (final OutputSource output = new OutputSource(outputFile.getPath())) {
-				for (final File file : temporaryDirectory.listFiles()) {
-					monitor.ping(file.toString() + "\r");
-					
-					try (final OutputStream entryOutput = output.open(file.getName())) {
-						Tools.writeAndClose(new FileInputStream(file), true, entryOutput, false);
-					}
-				}
-			}
+			renderer.beforeRender(modelAreas);
 			
-			monitor.pause();
+			if (exportingObjects) {
+				// Only the regions solved for the rectangles
+				GroundTruthExport.write(renderer, objectsFile, tileWidth, tileHeight);
+			}
 			
-			System.out.println("Writing " + outputFile + " done in " + timer.toc() + " ms");
-		}
-	}
-	
-	public static final void subsample(final File temporaryDirectory,
-			final String outputImageName) throws IOException {
-		final ConsoleMonitor monitor = new ConsoleMonitor(MONITOR_PERIOD_MILLISECONDS);
-		final TicToc timer = new TicToc();
-		
-		System.out.println("Subsampling... " + new Date(timer.tic()));
-		
-		MultiFileImage2D image = new MultiFileImage2D(temporaryDirectory.getPath());
-		
-		try (final OutputSource output = new OutputSource(temporaryDirectory.getPath())) {
-			for (int lodVariable = 1; lodVariable <= 7; ++lodVariable) {
-				final int lod = lodVariable;
-				final TiledImage2D lodImage = (TiledImage2D) image.getLODImage(lod);
-				
-				if (XMLTools.getNode(image.getMetadata(), "image/subimage[@id='" + lod + "']") != null) {
-					continue;
-				}
+			for (int i = 0; i < regionsOfInterest.length; ++i) {
+				final String roiBase = outputBases[i];
 				
-				Tools.debugPrint(lod, lodImage.getWidth(), lodImage.getHeight(), lodImage.getOptimalTileWidth(), lodImage.getOptimalTileHeight());
+				settings.setRegionOfInterest(regionsOfInterest[i], roiLOD);
 				
-				IMJTools.forEachTileIn(lodImage, new TileProcessor() {
-					
-					@Override
-					public final void pixel(final Info info) {
-						final int tileX = info.getTileX();
-						final int tileY = info.getTileY();
-						
-						monitor.ping(lod + " " + tileX + " " + tileY + " / " + lodImage.getWidth() + " " + lodImage.getHeight() + "\r");
-						
-						final String entryName = outputImageName + "_svs" + lod + "_" + tileX + "_" + tileY + ".jpg";
-						
-						if (new File(temporaryDirectory, entryName).exists()) {
-							return;
-						}
-						
-						@SuppressWarnings("unchecked")
-						final ConcreteImage2D<LinearIntImage> tile = (ConcreteImage2D<LinearIntImage>) lodImage.ensureTileContains(tileX, tileY).updateTile();
-						
-						try (final OutputStream entryOutput = output.open(entryName)) {
-							ImageIO.write(awtImage(tile), "jpg", entryOutput);
-						} catch (final IOException exception) {
-							throw unchecked(exception);
-						}
-					}
-					
-					@Override
-					public final void endOfTile() {
-						// NOP
-					}
-					
-					/**
-					 * {@value}.
-					 */
-					private static final long serialVersionUID = -8384016321780583170L;
-					
-				});
-				
-				XMLTools.getOrCreateNode(image.getMetadata(), "image/subimage["
-						+ "@id='" + lod
-						+ "' and @type='" + "svs_slide_lod"
-						+ "' and @width='" + lodImage.getWidth()
-						+ "' and @height='" + lodImage.getHeight()
-						+ "' and @tileWidth='" + lodImage.getOptimalTileWidth()
-						+ "' and @tileHeight='" + lodImage.getOptimalTileHeight()
-						+ "']");
-				
-				try (final OutputStream entryOutput = output.open("metadata.xml")) {
-					XMLTools.write(image.getMetadata(), entryOutput, 0);
+				if (!new File(roiBase + outputExtension).exists()) {
+					generate(model, renderer, tileWidth, tileHeight, roiBase, outputExtension, new File(roiBase).getName(),
+							postProcessor, codec, settings);
 				}
-				
-				image = new MultiFileImage2D(temporaryDirectory.getPath());
 			}
 		}
 		
-		monitor.pause();
-		
-		System.out.println("Subsampling done in " + timer.toc() + " ms");
+		if (showResult) {
+			ZipSlideViewer.main(array("file", outputBases[0] + outputExtension));
+		}
 	}
 	
 	/**
-	 * @author ga (creation 2014-09-09)
+	 * Writes the WSI into <code>outputBase + ".part" + outputExtension</code>,
+	 * which is renamed <code>outputBase + outputExtension</code> when complete.
+	 * <br>In DeepZoom mode, the tiles are written into the directory <code>outputBase + "_files.part"</code>,
+	 * which is renamed <code>outputBase + "_files"</code>, and the descriptor <code>outputBase + ".dzi"</code> is written last;
+ * a <code>outputBase + "_files"</code> directory left without its descriptor is rejected before anything is rendered.
+	 * <br>If <code>settings</code> asks for label masks, they are written the same way into <code>outputBase + "_labels.zip"</code>,
+	 * which is renamed before the WSI.
+	 * 
+	 * @param outputExtension
+	 * <br><code>".zip"</code>, <code>".tif"</code> for a BigTIFF, or <code>".dzi"</code> for DeepZoom
 	 */
-	public static final class MultiFileImage2D extends TiledImage2D {
+	public static final void generate(final Model model, final ModelRenderer renderer, final int tileWidth, final int tileHeight,
+			final String outputBase, final String outputExtension, final String outputImageName,
+			final TilePostProcessor postProcessor, final TileCodec codec, final TilePipeline.Settings settings) throws IOException {
+		final boolean deepZoom = isDeepZoom(outputExtension);
+		final File outputFile = new File(deepZoom ? outputBase + "_files" : outputBase + outputExtension);
+		final File partialOutputFile = new File(deepZoom ? outputBase + "_files.part" : outputBase + ".part" + outputExtension);
+		final File labelFile = new File(outputBase + LABELS_SUFFIX + ".zip");
+		final File partialLabelFile = new File(outputBase + LABELS_SUFFIX + ".part.zip");
+		final TicToc timer = new TicToc();
 		
-		private final InputSource inputSource;
+		if (deepZoom && outputFile.exists()) {
+			// Left by an earlier run, possibly interrupted between the renaming and the descriptor
+			throw new IllegalStateException(outputFile + " already exists without " + outputBase + outputExtension
+					+ "; remove it to generate again");
+		}
 		
-		private final Document metadata;
+		System.out.println("Generating WSI... " + new Date(timer.tic()));
 		
-		private final int lod;
+		final Document metadata;
 		
-		private final int width;
+		try (final OutputSource output = new OutputSource(partialOutputFile.getPath());
+				final OutputSource labelOutput = settings.isLabelMasks() ? new OutputSource(partialLabelFile.getPath()) : null) {
+			metadata = process(model, tileWidth, tileHeight, output, outputImageName, renderer, postProcessor, codec, settings, labelOutput);
+			
+			if (!deepZoom) {
+				try (final OutputStream entryOutput = output.open("metadata.xml")) {
+					XMLTools.write(metadata, entryOutput, 0);
+				}
+			}
+		}
 		
-		private final int height;
+		if (settings.isLabelMasks()) {
+			Files.move(partialLabelFile.toPath(), labelFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(OutputSource.journalFile(partialLabelFile.getPath()).toPath());
+		}
 		
-		private final String tileBase;
+		Files.move(partialOutputFile.toPath(), outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		Files.delete(OutputSource.journalFile(partialOutputFile.getPath()).toPath());
 		
-		private BufferedImage tile;
+		if (deepZoom) {
+			XMLTools.write(XMLTools.parse("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\""
+					+ " Format=\"" + codec.getFormat() + "\" Overlap=\"" + settings.getOverlap() + "\" TileSize=\"" + tileWidth + "\">"
+					+ "<Size Width=\"" + getNumber(metadata, "image/subimage[@id='0']/@width").intValue()
+					+ "\" Height=\"" + getNumber(metadata, "image/subimage[@id='0']/@height").intValue() + "\"/></Image>"),
+					new File(outputBase + outputExtension), 0);
+		}
 		
-		private final Channels channels;
+		System.out.println("WSI generated in " + timer.toc() + " ms");
+	}
+	
+	/**
+	 * @return the base name of the partial archive rendered by shard <code>shardIndex</code>
+	 * and merged by {@link MergeWSI}
+	 */
+	public static final String shardBase(final String outputBase, final int shardIndex, final int shardCount) {
+		return outputBase + ".shard" + shardIndex + "of" + shardCount;
+	}
+	
+	/**
+	 * @return the renderer saved in {@link #RENDERERS_FILE} if it was solved for <code>model</code> with <code>seed</code>,
+	 * otherwise <code>null</code>
+	 */
+	public static final ModelRenderer readSolvedRenderer(final Model model, final long seed) {
+		if (!RENDERERS_FILE.exists()) {
+			return null;
+		}
 		
-		private TreeMap<Integer, Image2D> lodImages;
+		final ModelRenderer result = Tools.readObject(RENDERERS_FILE.getPath());
 		
-		public MultiFileImage2D(final String id) {
-			this(id, 0);
+		if (!model.getFile().equals(result.getModel().getFile())) {
+			return null;
 		}
 		
-		public MultiFileImage2D(final String id, final int lod) {
-			this(id, lod, lod == 0 ? new TreeMap<>() : null);
+		if (result.getRegionRenderers().values().stream().anyMatch(r -> r instanceof AdjacentObjectsRenderer
+				&& ((AdjacentObjectsRenderer) r).getSeed() != seed)) {
+			Tools.debugPrint("Ignoring", RENDERERS_FILE, "solved with another seed than", seed);
+			
+			return null;
 		}
 		
-		private MultiFileImage2D(final String id, final int lod, final TreeMap<Integer, Image2D> lodImages) {
-			super(id + "_lod" + lod);
-			this.inputSource = new InputSource(id);
-			this.lod = lod;
-			this.tileBase = baseName(new File(id).getName()) + "_svs" + lod + "_";
-			this.lodImages = lodImages;
+		return result;
+	}
+	
+	/**
+	 * @param seed
+	 * <br>Slide seed of the layouts, see {@link Seeds}; a layout saved in {@link #RENDERERS_FILE} with another seed is solved again
+	 */
+	public static final ModelRenderer newRenderer(final Model model, final String rendererXMLPath, final long seed) {
+		{
+			final ModelRenderer result = readSolvedRenderer(model, seed);
 			
-			try (final InputStream xml = this.inputSource.open("metadata.xml");
-					final InputStream tile = this.inputSource.open(this.tileBase + "0_0.jpg")) {
-				this.metadata = parse(xml);
-				final BufferedImage tile00 = ImageIO.read(tile);
-				final Element image = (Element) getNode(this.metadata, "image/subimage[@id='" + lod +"']");
-				this.width = getNumber(image, "@width").intValue();
-				this.height = getNumber(image, "@height").intValue();
-				this.tile = tile00;
-				this.channels = IMJTools.predefinedChannelsFor(tile00);
-				
-				this.setOptimalTileDimensions(getNumber(image, "@tileWidth").intValue(),
-						getNumber(image, "@tileHeight").intValue());
-				
-				if (0 == lod) {
-					this.lodImages.put(lod, this);
-					
-					for (final Node subimageNode : XMLTools.getNodes(this.metadata, "image/subimage")) {
-						final int subimageWidth = getNumber(subimageNode, "@width").intValue();
-						final int subimageHeight = getNumber(subimageNode, "@height").intValue();
-						final int subimageLOD = bitSize(this.width) - bitSize(subimageWidth);
-						
-						if (0 < subimageLOD && this.width >> subimageLOD == subimageWidth
-								&& this.height >> subimageLOD == subimageHeight) {
-							this.lodImages.put(subimageLOD,
-									new MultiFileImage2D(id, subimageLOD, this.lodImages));
-						}
-					}
-				}
-			} catch (final IOException exception) {
-				throw unchecked(exception);
+			if (result != null) {
+				return result;
 			}
 		}
 		
-		public final Document getMetadata() {
-			return this.metadata;
-		}
-		
-		@Override
-		public final int getWidth() {
-			return this.width;
-		}
-		
-		@Override
-		public final int getHeight() {
-			return this.height;
-		}
+		final ModelRenderer result = new ModelRenderer(model);
+		final File root = new File(rendererXMLPath).getParentFile();
 		
-		@Override
-		public final int getLOD() {
-			return this.lod;
-		}
 		
-		@Override
-		public final Image2D getLODImage(final int lod) {
-			if (lod == this.getLOD()) {
-				return this;
-			}
-			
-			Image2D protoresult = this;
+		try (final InputStream xmlInputStream = new FileInputStream(rendererXMLPath)) {
+			final Document xml = parse(xmlInputStream);
 			
-			for (final Map.Entry<Integer, Image2D> entry : this.lodImages.entrySet()) {
-				if (entry.getKey() == lod) {
-					return entry.getValue();
-				}
+			for (final Node regionNode : getNodes(xml, "renderer/region")) {
+				final Element regionElement = (Element) regionNode;
+				final String label = regionElement.getAttribute("label");
+				final Element regionRendererElement = (Element) regionElement.getElementsByTagName("*").item(0);
 				
-				if (entry.getKey() < lod) {
-					protoresult = entry.getValue();
+				Tools.debugPrint(label);
+				
+				if ("adjacentObjects".equals(regionRendererElement.getTagName())) {
+					final double collisionableRadius = parseDouble(select(regionRendererElement.getAttribute("collisionableRadius"), "1.0"));
+					final int maximumIterationCount = parseInt(select(regionRendererElement.getAttribute("maximumIterations"), "0"));
+					final File[] textures = getNodes(regionRendererElement, "texture").stream().map(n -> new File(root, ((Element) n).getAttribute("file"))).toArray(File[]::new);
+					result.setRegionRenderer(label, new AdjacentObjectsRenderer(collisionableRadius, textures)
+							.setMaximumIterationCount(maximumIterationCount).setSeed(seed));
+				} else {
+					Tools.debugError("Unknown region renderer:", regionElement.getTagName());
 				}
 			}
 			
-			return new SubsampledImage2D(protoresult).getLODImage(lod);
+			return result;
+		} catch (final IOException exception) {
+			throw new UncheckedIOException(exception);
 		}
-		
-		@Override
-		public final MultiFileImage2D[] newParallelViews(final int n) {
-			final MultiFileImage2D[] result = new MultiFileImage2D[n];
+	}
+	
+	/**
+	 * @param qualities
+	 * <br>Comma-separated JPEG qualities, one per LOD starting from 0, the last one being used for the following LODs
+	 */
+	public static final TileCodec newTileCodec(final String format, final String qualities, final boolean chromaSubsampling) {
+		if ("jpg".equals(format)) {
+			final String[] strings = qualities.split(",");
+			final float[] values = new float[strings.length];
 			
-			if (0 < n) {
-				result[0] = this;
-				
-				for (int i = 1; i < n; ++i) {
-					result[i] = new MultiFileImage2D(this.getId());
-				}
+			for (int i = 0; i < strings.length; ++i) {
+				values[i] = Float.parseFloat(strings[i].trim());
 			}
 			
-			return result;
+			return new TileCodec.Jpeg(values, chromaSubsampling);
 		}
 		
-		@Override
-		public final Channels getChannels() {
-			return this.channels;
-		}
+		return TileCodec.forFormat(format);
+	}
+	
+	public static final String select(final String string1, final String string2) {
+		return string1.isEmpty() ? string2 : string1;
+	}
+	
+	/**
+	 * Renders the base level into <code>output</code>, together with the levels of detail
+	 * 1 to {@link #MAXIMUM_LOD}, which are reduced from the tiles as soon as they are rendered.
+	 * <br>If <code>settings</code> selects a shard, only its base tiles are rendered and no other level is built.
+	 * <br>In DeepZoom mode, the levels go up to 1x1 instead.
+	 * <br>Each base tile goes through <code>postProcessor</code> before being written with <code>codec</code>.
+	 * <br>Rendering, encoding and writing run in separate thread pools configured by <code>settings</code>.
+	 * <br>The stages are measured by {@link GenerationMetrics}, which are printed every {@link #MONITOR_PERIOD_MILLISECONDS}.
+	 * 
+	 * @return the WSI metadata, to be completed and written by the caller
+	 */
+	public static final Document process(final Model model, final int tileWidth, final int tileHeight,
+			final OutputSource output, final String outputImageName, final ModelRenderer renderer,
+			final TilePostProcessor postProcessor, final TileCodec codec, final TilePipeline.Settings settings) throws IOException {
+		return process(model, tileWidth, tileHeight, output, outputImageName, renderer, postProcessor, codec, settings, null);
+	}
+	
+	/**
+	 * Same as {@link #process(Model, int, int, OutputSource, String, ModelRenderer, TilePostProcessor, TileCodec, TilePipeline.Settings)},
+	 * also writing into <code>labelOutput</code>, unless it is <code>null</code>, the label masks of the image as a complete WSI
+	 * named <code>outputImageName + "_labels"</code>, see {@link LabelMasks}.
+	 */
+	public static final Document process(final Model model, final int tileWidth, final int tileHeight,
+			final OutputSource output, final String outputImageName, final ModelRenderer renderer,
+			final TilePostProcessor postProcessor, final TileCodec codec, final TilePipeline.Settings settings,
+			final OutputSource labelOutput) throws IOException {
+		final ConsoleMonitor monitor = new ConsoleMonitor(MONITOR_PERIOD_MILLISECONDS);
+		final TicToc timer = new TicToc();
 		
-		@Override
-		public final Image getSource() {
-			return null;
+		System.out.println("Processing... " + new Date(timer.tic()));
+		
+		final Rectangle bounds = model.getBounds();
+		
+		bounds.width *= SCALE;
+		bounds.height *= SCALE;
+		
+		if (settings.getRegionOfInterest() != null) {
+			bounds.width = settings.getRegionOfInterest().width >> settings.getLOD();
+			bounds.height = settings.getRegionOfInterest().height >> settings.getLOD();
 		}
 		
-		@Override
-		protected final int getPixelValueFromTile(final int x, final int y, final int xInTile, final int yInTile) {
-			return this.tile.getRGB(xInTile, yInTile);
+		debugPrint(model.getRegions().size(), bounds);
+		
+		final int lodCount = settings.isDeepZoom() ? deepZoomMaximumLevel(bounds.width, bounds.height)
+				: settings.getShardCount() == 1 ? MAXIMUM_LOD : 0;
+		final LabelMasks labels = labelOutput == null ? null : new LabelMasks(renderer, labelOutput, outputImageName + LABELS_SUFFIX,
+				bounds.width, bounds.height, tileWidth, tileHeight, lodCount);
+		final TilePipeline pipeline = new TilePipeline(renderer, postProcessor, codec, output, outputImageName,
+				bounds.width, bounds.height, tileWidth, tileHeight, lodCount, settings, labels);
+		final PyramidBuilder pyramid = pipeline.getPyramid();
+		final Document metadata = newMetadata(pyramid, codec);
+		final GenerationMetrics metrics = GenerationMetrics.getInstance();
+		final Timer metricsLogger = metrics.newLogger(MONITOR_PERIOD_MILLISECONDS);
+		
+		metrics.setPipeline(pipeline);
+		
+		if (settings.getShardCount() != 1) {
+			metadata.getDocumentElement().setAttribute("shard", settings.getShardIndex() + "/" + settings.getShardCount());
 		}
 		
-		@Override
-		protected final void setTilePixelValue(final int x, final int y, final int xInTile, final int yInTile, final int value) {
-			throw new UnsupportedOperationException();
+		if (settings.getRegionOfInterest() != null) {
+			final Rectangle roi = settings.getRegionOfInterest();
+			
+			metadata.getDocumentElement().setAttribute("roi", roi.x + "," + roi.y + "," + roi.width + "," + roi.height);
+			metadata.getDocumentElement().setAttribute("roiLOD", "" + settings.getLOD());
 		}
 		
-		@Override
-		public final BufferedImage updateTile() {
-			final String tileName = this.tileBase + this.getTileX() + "_" + this.getTileY() + ".jpg";
-			final String tileKey = this.getId() + " " + tileName;
-			final InputSource inputSource = this.inputSource;
+		try {
+			final int restoredTileCount = pipeline.restore();
 			
-			this.tile = IMJCoreTools.cache(tileKey, new Callable<BufferedImage>() {
-				
-				@Override
-				public final BufferedImage call() throws Exception {
-					try (final InputStream input = inputSource.open(tileName)) {
-						return ImageIO.read(input);
-					}
-				}
-				
-			});
+			if (0 < restoredTileCount) {
+				System.out.println("Restored tiles: " + restoredTileCount);
+			}
 			
-			return this.tile;
+			pipeline.submitAll(monitor);
+		} finally {
+			pipeline.close();
+			metricsLogger.cancel();
 		}
 		
-		@Override
-		protected final boolean makeNewTile() {
-			return this.tile.getWidth() != this.getTileWidth() || this.tile.getHeight() != this.getTileHeight();
+		System.out.println("metrics " + metrics);
+		
+		monitor.pause();
+		
+		if (pyramid.getPendingTileCount() != 0) {
+			throw new IllegalStateException("Incomplete pyramid: " + pyramid.getPendingTileCount() + " pending tiles");
 		}
 		
-		@Override
-		protected final void finalize() throws Throwable {
-			try {
-				this.inputSource.close();
-			} finally {
-				super.finalize();
+		if (labels != null) {
+			final Document labelMetadata = labels.newMetadata();
+			
+			if (settings.getRegionOfInterest() != null) {
+				labelMetadata.getDocumentElement().setAttribute("roi", metadata.getDocumentElement().getAttribute("roi"));
+				labelMetadata.getDocumentElement().setAttribute("roiLOD", metadata.getDocumentElement().getAttribute("roiLOD"));
+			}
+			
+			try (final OutputStream entryOutput = labelOutput.open("metadata.xml")) {
+				XMLTools.write(labelMetadata, entryOutput, 0);
 			}
 		}
 		
-		/**
-		 * {@value}.
-		 */
-		private static final long serialVersionUID = 85144910520620110L;
+		System.out.println(codec);
+		System.out.println("Processing done in " + timer.toc() + " ms");
 		
-		public static final int bitSize(final int value) {
-			return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(value);
+		return metadata;
+	}
+	
+	/**
+	 * @return the WSI metadata describing the levels of <code>pyramid</code>
+	 */
+	public static final Document newMetadata(final PyramidBuilder pyramid, final TileCodec codec) {
+		final Document result = XMLTools.parse("<image micronsPerPixel=\"0.2525\"/>");
+		
+		result.getDocumentElement().setAttribute("tileFormat", codec.getFormat());
+		
+		for (int lod = 0; lod <= pyramid.getLODCount() && 0 < pyramid.getLODWidth(lod) && 0 < pyramid.getLODHeight(lod); ++lod) {
+			final Element subImage = (Element) result.getDocumentElement().appendChild(result.createElement("subimage"));
+			
+			subImage.setAttribute("id", "" + lod);
+			subImage.setAttribute("type", "svs_slide_lod");
+			subImage.setAttribute("width", "" + pyramid.getLODWidth(lod));
+			subImage.setAttribute("height", "" + pyramid.getLODHeight(lod));
+			subImage.setAttribute("tileWidth", "" + pyramid.getTileWidth());
+			subImage.setAttribute("tileHeight", "" + pyramid.getTileHeight());
 		}
 		
+		return result;
+	}
+	
+	/**
+	 * @return the index of the full resolution level of a DeepZoom pyramid, whose level 0 is 1x1
+	 */
+	public static final int deepZoomMaximumLevel(final int width, final int height) {
+		return Integer.SIZE - Integer.numberOfLeadingZeros(max(width, height) - 1);
+	}
+	
+	public static final boolean isDeepZoom(final String outputExtension) {
+		return outputExtension.endsWith(".dzi");
+	}
+	
+	public static final String tileName(final String imageName, final int lod, final int tileX, final int tileY,
+			final TileCodec codec) {
+		return imageName + "_svs" + lod + "_" + tileX + "_" + tileY + "." + codec.getFormat();
+	}
+	
+	public static final BufferedImage bgr(final BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			return image;
+		}
+		
+		final BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		final Graphics2D g = result.createGraphics();
+		
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		
+		return result;
 	}
 	
 	/**
@@ -0,0 +1,149 @@
+package fr.unistra.wsi.synthetic;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import multij.tools.IllegalInstantiationException;
+
+/**
+ * Java Flight Recorder events of the WSI generation, from the layout solver to the written entries.
+ * <br>They cost almost nothing when no recording is running, so their fields are only set if <code>shouldCommit()</code>.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class GenerationEvents {
+	
+	private GenerationEvents() {
+		throw new IllegalInstantiationException();
+	}
+	
+	public static final String CATEGORY = "SyntheticWSI";
+	
+	/**
+	 * {@link ModelRenderer#beforeRenderRegion(Region)}, which solves the layout of a region the first time.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	@Name("fr.unistra.wsi.synthetic.RegionPreparation")
+	@Label("Region Preparation")
+	@Category({ CATEGORY, "Solver" })
+	public static final class RegionPreparation extends Event {
+		
+		@Label("Region")
+		public String region;
+		
+		@Label("X")
+		public int x;
+		
+		@Label("Y")
+		public int y;
+		
+		@Label("Width")
+		public int width;
+		
+		@Label("Height")
+		public int height;
+		
+		@Label("Solved")
+		public boolean solved;
+		
+	}
+	
+	/**
+	 * One step of the sphere solver of {@link AdjacentObjectsRenderer}.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	@Name("fr.unistra.wsi.synthetic.SolverIteration")
+	@Label("Solver Iteration")
+	@Category({ CATEGORY, "Solver" })
+	public static final class SolverIteration extends Event {
+		
+		@Label("Region")
+		public String region;
+		
+		@Label("Spheres")
+		public int sphereCount;
+		
+		@Label("Iteration")
+		public int iteration;
+		
+		@Label("Residual")
+		public double residual;
+		
+	}
+	
+	/**
+	 * {@link ModelRenderer#renderTo(imj2.tools.Canvas, int, int, int, int)}.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	@Name("fr.unistra.wsi.synthetic.TileRendering")
+	@Label("Tile Rendering")
+	@Category({ CATEGORY, "Pipeline" })
+	public static final class TileRendering extends Event {
+		
+		@Label("Tile X")
+		public int tileX;
+		
+		@Label("Tile Y")
+		public int tileY;
+		
+		@Label("Width")
+		public int width;
+		
+		@Label("Height")
+		public int height;
+		
+		@Label("Rendered Regions")
+		public int regionCount;
+		
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	@Name("fr.unistra.wsi.synthetic.TileEncoding")
+	@Label("Tile Encoding")
+	@Category({ CATEGORY, "Pipeline" })
+	public static final class TileEncoding extends Event {
+		
+		@Label("Level")
+		public int lod;
+		
+		@Label("Tile X")
+		public int tileX;
+		
+		@Label("Tile Y")
+		public int tileY;
+		
+		@Label("Format")
+		public String format;
+		
+		@Label("Encoded Size")
+		@DataAmount
+		public long size;
+		
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	@Name("fr.unistra.wsi.synthetic.TileWriting")
+	@Label("Tile Writing")
+	@Category({ CATEGORY, "Pipeline" })
+	public static final class TileWriting extends Event {
+		
+		@Label("Entry")
+		public String entryName;
+		
+		@Label("Size")
+		@DataAmount
+		public long size;
+		
+	}
+	
+}
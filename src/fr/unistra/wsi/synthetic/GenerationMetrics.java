@@ -0,0 +1,334 @@
+package fr.unistra.wsi.synthetic;
+
+import static multij.tools.Tools.unchecked;
+
+import imj2.core.IMJCoreTools;
+import imj2.tools.LatencyHistogram;
+import imj2.tools.MemoryBudget;
+import imj2.tools.PipelineStage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the current generation, shared by the solver, the tile pipeline and the caches.
+ * <br>They can be read through JMX with {@link #register()}, or printed periodically as JSON lines with {@link #newLogger(long)}.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class GenerationMetrics implements GenerationMetricsMBean {
+	
+	private final List<SolverResult> solverResults;
+	
+	private volatile TilePipeline pipeline;
+	
+	private volatile long pipelineStart;
+	
+	private GenerationMetrics() {
+		this.solverResults = new ArrayList<>();
+	}
+	
+	/**
+	 * Sets the pipeline whose stages are measured.
+	 */
+	public final void setPipeline(final TilePipeline pipeline) {
+		this.pipelineStart = System.nanoTime();
+		this.pipeline = pipeline;
+	}
+	
+	/**
+	 * Can be called concurrently.
+	 */
+	public final void solved(final Region region, final int sphereCount, final int iterationCount, final double residual,
+			final long milliseconds) {
+		synchronized (this.solverResults) {
+			this.solverResults.add(new SolverResult(region.getLabel(), sphereCount, iterationCount, residual, milliseconds));
+		}
+	}
+	
+	/**
+	 * Registers this as <code>fr.unistra.wsi.synthetic:type=GenerationMetrics</code> in the platform MBean server,
+	 * unless it is already registered.
+	 */
+	public final GenerationMetrics register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (final InstanceAlreadyExistsException exception) {
+			// Already registered
+		} catch (final JMException exception) {
+			throw unchecked(exception);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Prints <code>"metrics " + this</code> every <code>periodMilliseconds</code>, along with the rates since the previous line.
+	 * 
+	 * @return a timer that must be canceled to stop logging
+	 */
+	public final Timer newLogger(final long periodMilliseconds) {
+		final Timer result = new Timer("metrics", true);
+		
+		result.schedule(new TimerTask() {
+			
+			private long previousTime = System.nanoTime();
+			
+			private final long[] previousCounts = new long[3];
+			
+			@Override
+			public final void run() {
+				final long time = System.nanoTime();
+				final GenerationMetrics metrics = GenerationMetrics.this;
+				final long[] counts = { metrics.getRenderedTileCount(), metrics.getEncodedTileCount(), metrics.getWrittenTileCount() };
+				final double seconds = (time - this.previousTime) / 1.0E9;
+				
+				System.out.println("metrics " + metrics.toString(String.format(Locale.ENGLISH, ", \"recentRates\": [%.2f, %.2f, %.2f]",
+						(counts[0] - this.previousCounts[0]) / seconds, (counts[1] - this.previousCounts[1]) / seconds,
+						(counts[2] - this.previousCounts[2]) / seconds)));
+				
+				this.previousTime = time;
+				System.arraycopy(counts, 0, this.previousCounts, 0, counts.length);
+			}
+			
+		}, periodMilliseconds, periodMilliseconds);
+		
+		return result;
+	}
+	
+	@Override
+	public final long getRenderedTileCount() {
+		return count(this.getRenderStage());
+	}
+	
+	@Override
+	public final long getEncodedTileCount() {
+		return count(this.getEncodeStage());
+	}
+	
+	@Override
+	public final long getWrittenTileCount() {
+		return count(this.getWriteStage());
+	}
+	
+	@Override
+	public final double getRenderedTilesPerSecond() {
+		return this.perSecond(this.getRenderedTileCount());
+	}
+	
+	@Override
+	public final double getEncodedTilesPerSecond() {
+		return this.perSecond(this.getEncodedTileCount());
+	}
+	
+	@Override
+	public final double getWrittenTilesPerSecond() {
+		return this.perSecond(this.getWrittenTileCount());
+	}
+	
+	@Override
+	public final double[] getRenderLatencies() {
+		return latencies(this.getRenderStage());
+	}
+	
+	@Override
+	public final double[] getEncodeLatencies() {
+		return latencies(this.getEncodeStage());
+	}
+	
+	@Override
+	public final double[] getWriteLatencies() {
+		return latencies(this.getWriteStage());
+	}
+	
+	@Override
+	public final String getQueues() {
+		final TilePipeline pipeline = this.pipeline;
+		
+		return pipeline == null ? "" : pipeline.toString();
+	}
+	
+	@Override
+	public final int getSolvedRegionCount() {
+		synchronized (this.solverResults) {
+			return this.solverResults.size();
+		}
+	}
+	
+	@Override
+	public final long getSolverIterationCount() {
+		synchronized (this.solverResults) {
+			return this.solverResults.stream().mapToLong(SolverResult::getIterationCount).sum();
+		}
+	}
+	
+	@Override
+	public final double getMaximumSolverResidual() {
+		synchronized (this.solverResults) {
+			return this.solverResults.stream().mapToDouble(SolverResult::getResidual).max().orElse(0.0);
+		}
+	}
+	
+	@Override
+	public final String[] getSolverResults() {
+		synchronized (this.solverResults) {
+			return this.solverResults.stream().map(SolverResult::toString).toArray(String[]::new);
+		}
+	}
+	
+	@Override
+	public final long getCacheHitCount() {
+		return IMJCoreTools.getCacheHitCount();
+	}
+	
+	@Override
+	public final long getCacheMissCount() {
+		return IMJCoreTools.getCacheMissCount();
+	}
+	
+	@Override
+	public final double getCacheHitRatio() {
+		final long hitCount = this.getCacheHitCount();
+		final long accessCount = hitCount + this.getCacheMissCount();
+		
+		return accessCount == 0L ? 0.0 : (double) hitCount / accessCount;
+	}
+	
+	@Override
+	public final String getMemoryBudget() {
+		return MemoryBudget.getInstance().toString();
+	}
+	
+	@Override
+	public final long getHeapHeadroom() {
+		final Runtime runtime = Runtime.getRuntime();
+		
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+	
+	/**
+	 * @return a JSON object on a single line
+	 */
+	@Override
+	public final String toString() {
+		return this.toString("");
+	}
+	
+	private final String toString(final String extraFields) {
+		return String.format(Locale.ENGLISH, "{\"time\": %d, \"tiles\": [%d, %d, %d], \"rates\": [%.2f, %.2f, %.2f],"
+				+ " \"latencies\": {\"render\": %s, \"encode\": %s, \"write\": %s}, \"queues\": \"%s\","
+				+ " \"solver\": {\"regions\": %d, \"iterations\": %d, \"maximumResidual\": %.3f},"
+				+ " \"cacheHitRatio\": %.3f, \"memoryBudget\": \"%s\", \"heapHeadroom\": %d%s}",
+				System.currentTimeMillis(), this.getRenderedTileCount(), this.getEncodedTileCount(), this.getWrittenTileCount(),
+				this.getRenderedTilesPerSecond(), this.getEncodedTilesPerSecond(), this.getWrittenTilesPerSecond(),
+				json(this.getRenderLatencies()), json(this.getEncodeLatencies()), json(this.getWriteLatencies()), this.getQueues(),
+				this.getSolvedRegionCount(), this.getSolverIterationCount(), this.getMaximumSolverResidual(),
+				this.getCacheHitRatio(), this.getMemoryBudget(), this.getHeapHeadroom(), extraFields);
+	}
+	
+	private final PipelineStage<?> getRenderStage() {
+		final TilePipeline pipeline = this.pipeline;
+		
+		return pipeline == null ? null : pipeline.getRenderStage();
+	}
+	
+	private final PipelineStage<?> getEncodeStage() {
+		final TilePipeline pipeline = this.pipeline;
+		
+		return pipeline == null ? null : pipeline.getEncodeStage();
+	}
+	
+	private final PipelineStage<?> getWriteStage() {
+		final TilePipeline pipeline = this.pipeline;
+		
+		return pipeline == null ? null : pipeline.getWriteStage();
+	}
+	
+	private final double perSecond(final long count) {
+		final double seconds = (System.nanoTime() - this.pipelineStart) / 1.0E9;
+		
+		return seconds <= 0.0 ? 0.0 : count / seconds;
+	}
+	
+	public static final String OBJECT_NAME = "fr.unistra.wsi.synthetic:type=GenerationMetrics";
+	
+	private static final GenerationMetrics instance = new GenerationMetrics();
+	
+	public static final GenerationMetrics getInstance() {
+		return instance;
+	}
+	
+	static final long count(final PipelineStage<?> stage) {
+		return stage == null ? 0L : stage.getLatencies().getCount();
+	}
+	
+	static final double[] latencies(final PipelineStage<?> stage) {
+		if (stage == null) {
+			return new double[5];
+		}
+		
+		final LatencyHistogram latencies = stage.getLatencies();
+		
+		return new double[] { latencies.getMeanMilliseconds(), latencies.getQuantileMilliseconds(0.5),
+				latencies.getQuantileMilliseconds(0.9), latencies.getQuantileMilliseconds(0.99), latencies.getMaximumMilliseconds() };
+	}
+	
+	static final String json(final double[] values) {
+		final StringBuilder result = new StringBuilder("[");
+		
+		for (int i = 0; i < values.length; ++i) {
+			result.append(i == 0 ? "" : ", ").append(String.format(Locale.ENGLISH, "%.3f", values[i]));
+		}
+		
+		return result.append("]").toString();
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class SolverResult {
+		
+		private final String label;
+		
+		private final int sphereCount;
+		
+		private final int iterationCount;
+		
+		private final double residual;
+		
+		private final long milliseconds;
+		
+		SolverResult(final String label, final int sphereCount, final int iterationCount, final double residual,
+				final long milliseconds) {
+			this.label = label;
+			this.sphereCount = sphereCount;
+			this.iterationCount = iterationCount;
+			this.residual = residual;
+			this.milliseconds = milliseconds;
+		}
+		
+		final int getIterationCount() {
+			return this.iterationCount;
+		}
+		
+		final double getResidual() {
+			return this.residual;
+		}
+		
+		@Override
+		public final String toString() {
+			return String.format(Locale.ENGLISH, "%s: %d spheres, %d iterations, residual %.3f, %d ms",
+					this.label, this.sphereCount, this.iterationCount, this.residual, this.milliseconds);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,64 @@
+package fr.unistra.wsi.synthetic;
+
+/**
+ * JMX view of {@link GenerationMetrics}.
+ * <br>Latencies are given as <code>{mean, p50, p90, p99, max}</code> in milliseconds.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public abstract interface GenerationMetricsMBean {
+	
+	public abstract long getRenderedTileCount();
+	
+	public abstract long getEncodedTileCount();
+	
+	public abstract long getWrittenTileCount();
+	
+	/**
+	 * @return the average since the start of the current pipeline
+	 */
+	public abstract double getRenderedTilesPerSecond();
+	
+	public abstract double getEncodedTilesPerSecond();
+	
+	public abstract double getWrittenTilesPerSecond();
+	
+	public abstract double[] getRenderLatencies();
+	
+	public abstract double[] getEncodeLatencies();
+	
+	public abstract double[] getWriteLatencies();
+	
+	/**
+	 * @return the sizes and capacities of the stage queues
+	 */
+	public abstract String getQueues();
+	
+	public abstract int getSolvedRegionCount();
+	
+	public abstract long getSolverIterationCount();
+	
+	public abstract double getMaximumSolverResidual();
+	
+	/**
+	 * @return one line per solved region: label, sphere count, iteration count, residual and time
+	 */
+	public abstract String[] getSolverResults();
+	
+	public abstract long getCacheHitCount();
+	
+	public abstract long getCacheMissCount();
+	
+	public abstract double getCacheHitRatio();
+	
+	/**
+	 * @return the heap reserved by the running solves and tiles, over the budget
+	 */
+	public abstract String getMemoryBudget();
+	
+	/**
+	 * @return the number of heap bytes that can still be allocated
+	 */
+	public abstract long getHeapHeadroom();
+	
+}
@@ -0,0 +1,240 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.RENDERERS_FILE;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static multij.tools.Tools.baseName;
+import static multij.tools.Tools.unchecked;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import multij.tools.CommandLineArgumentsParser;
+import multij.tools.IllegalInstantiationException;
+import multij.tools.Tools;
+
+/**
+ * Columnar export of the objects laid out by the {@link AdjacentObjectsRenderer}s of a solved {@link ModelRenderer},
+ * which can be memory-mapped by tools that cannot read {@link GenerateWSI#RENDERERS_FILE}.
+ * <br>Numbers are little-endian and sections start on multiples of 8 bytes:
+ * <ul>
+ * <li>a {@value #HEADER_SIZE}-byte header: the magic <code>"SWSIOBJ\0"</code>, int32 version, cell width, cell height,
+ * column count, row count, region count, label count and padding, int64 object count,
+ * then the int64 offsets of the {@value #SECTION_COUNT} following sections;</li>
+ * <li>one column per field of the objects: float64 x, float64 y, float64 orientation (radians), int32 unit id,
+ * int32 region id and int32 label, where (x, y) is the center of the sprite in model space,
+ * the region id is an index in {@link ModelRenderer#getSubdividedRegions()} and the label is that of the texture unit;</li>
+ * <li>int64 cell offsets: the objects are sorted by the row-major cell of the grid that contains their center,
+ * and those of cell <code>i</code> are at indices <code>[offsets[i], offsets[i + 1])</code>; centers outside the model
+ * are counted in the nearest cell;</li>
+ * <li>int32 region labels, one per region;</li>
+ * <li>the labels, each as an int32 byte count followed by its UTF-8 bytes, indexed as in {@link LabelMasks}.</li>
+ * </ul>
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class GroundTruthExport {
+	
+	private GroundTruthExport() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * Exports a layout saved by <code>GenerateWSI solveOnly 1</code>.
+	 * <br>Arguments: <code>renderers</code> (default: {@link GenerateWSI#RENDERERS_FILE}), <code>output</code>
+	 * (default: the base name of <code>renderers</code> followed by {@link #FILE_SUFFIX}), <code>cellWidth</code>
+	 * and <code>cellHeight</code> (default: 512, the default tile size).
+	 * 
+	 * @param commandLineArguments
+	 * <br>Must not be null
+	 */
+	public static final void main(final String[] commandLineArguments) throws IOException {
+		final CommandLineArgumentsParser arguments = new CommandLineArgumentsParser(commandLineArguments);
+		final String renderersPath = arguments.get("renderers", RENDERERS_FILE.getPath());
+		final String output = arguments.get("output", baseName(renderersPath) + FILE_SUFFIX);
+		final int cellWidth = arguments.get("cellWidth", 512)[0];
+		final int cellHeight = arguments.get("cellHeight", cellWidth)[0];
+		final ModelRenderer renderer = Tools.readObject(renderersPath);
+		
+		System.out.println("Exported objects: " + write(renderer, new File(output), cellWidth, cellHeight));
+	}
+	
+	/**
+	 * Writes the objects of the solved regions of <code>renderer</code> into <code>file</code>, through a temporary file,
+	 * using a grid of <code>cellWidth</code> by <code>cellHeight</code> cells, in model space, for the cell offsets.
+	 * 
+	 * @return the number of exported objects
+	 */
+	public static final long write(final ModelRenderer renderer, final File file, final int cellWidth, final int cellHeight) throws IOException {
+		final List<Region> regions = renderer.getSubdividedRegions();
+		final List<String> labels = LabelMasks.newLabelList(renderer);
+		final Map<String, Integer> labelIndices = new HashMap<>();
+		final Rectangle bounds = renderer.getModel().getBounds();
+		final int columnCount = max(1, (bounds.x + bounds.width + cellWidth - 1) / cellWidth);
+		final int rowCount = max(1, (bounds.y + bounds.height + cellHeight - 1) / cellHeight);
+		final long[] cellOffsets = new long[columnCount * rowCount + 1];
+		final File partialFile = new File(file.getPath() + ".part");
+		
+		for (int i = 0; i < labels.size(); ++i) {
+			labelIndices.put(labels.get(i), i);
+		}
+		
+		// Counts the objects of each cell, shifted by one
+		forEachObject(renderer, regionId -> (x, y, unitId, orientation) -> {
+			++cellOffsets[1 + cell(x, y, cellWidth, cellHeight, columnCount, rowCount)];
+		});
+		
+		for (int i = 1; i < cellOffsets.length; ++i) {
+			cellOffsets[i] += cellOffsets[i - 1];
+		}
+		
+		final long n = cellOffsets[cellOffsets.length - 1];
+		final byte[][] labelBytes = labels.stream().map(label -> label.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+		final long[] sectionOffsets = new long[SECTION_COUNT + 1];
+		final long[] sectionSizes = {
+				8L * n, 8L * n, 8L * n, 4L * n, 4L * n, 4L * n, 8L * cellOffsets.length, 4L * regions.size(),
+				Arrays.stream(labelBytes).mapToLong(label -> 4L + label.length).sum() };
+		
+		sectionOffsets[0] = HEADER_SIZE;
+		
+		for (int i = 0; i < SECTION_COUNT; ++i) {
+			sectionOffsets[i + 1] = align(sectionOffsets[i] + sectionSizes[i]);
+		}
+		
+		try (final FileChannel channel = FileChannel.open(partialFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final ByteBuffer header = map(channel, 0L, HEADER_SIZE);
+			final ByteBuffer xs = map(channel, sectionOffsets[0], sectionSizes[0]);
+			final ByteBuffer ys = map(channel, sectionOffsets[1], sectionSizes[1]);
+			final ByteBuffer orientations = map(channel, sectionOffsets[2], sectionSizes[2]);
+			final ByteBuffer unitIds = map(channel, sectionOffsets[3], sectionSizes[3]);
+			final ByteBuffer regionIds = map(channel, sectionOffsets[4], sectionSizes[4]);
+			final ByteBuffer objectLabels = map(channel, sectionOffsets[5], sectionSizes[5]);
+			final ByteBuffer cells = map(channel, sectionOffsets[6], sectionSizes[6]);
+			final ByteBuffer regionLabels = map(channel, sectionOffsets[7], sectionSizes[7]);
+			final ByteBuffer labelTable = map(channel, sectionOffsets[8], sectionSizes[8]);
+			final long[] nextIndices = cellOffsets.clone();
+			
+			header.put(MAGIC).putInt(VERSION).putInt(cellWidth).putInt(cellHeight).putInt(columnCount).putInt(rowCount)
+					.putInt(regions.size()).putInt(labels.size()).putInt(0).putLong(n);
+			
+			for (int i = 0; i < SECTION_COUNT; ++i) {
+				header.putLong(sectionOffsets[i]);
+			}
+			
+			for (final long offset : cellOffsets) {
+				cells.putLong(offset);
+			}
+			
+			for (final Region region : regions) {
+				regionLabels.putInt(labelIndices.get(region.getLabel()));
+			}
+			
+			for (final byte[] label : labelBytes) {
+				labelTable.putInt(label.length).put(label);
+			}
+			
+			forEachObject(renderer, regionId -> {
+				final int[] unitLabels = ((AdjacentObjectsRenderer) renderer.getRegionRenderer(regions.get(regionId).getLabel()))
+						.getTextureUnits().stream().mapToInt(u -> labelIndices.get(u.getRegion().getLabel())).toArray();
+				
+				return (x, y, unitId, orientation) -> {
+					final int i = (int) nextIndices[cell(x, y, cellWidth, cellHeight, columnCount, rowCount)]++;
+					
+					xs.putDouble(8 * i, x);
+					ys.putDouble(8 * i, y);
+					orientations.putDouble(8 * i, orientation);
+					unitIds.putInt(4 * i, unitId);
+					regionIds.putInt(4 * i, regionId);
+					objectLabels.putInt(4 * i, unitLabels[unitId]);
+				};
+			});
+		}
+		
+		Files.move(partialFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		
+		return n;
+	}
+	
+	/**
+	 * Appended to the output base of the export.
+	 */
+	public static final String FILE_SUFFIX = ".objects.bin";
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int HEADER_SIZE = 128;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int SECTION_COUNT = 9;
+	
+	static final byte[] MAGIC = "SWSIOBJ\0".getBytes(StandardCharsets.US_ASCII);
+	
+	private static final void forEachObject(final ModelRenderer renderer, final IntFunction<AdjacentObjectsRenderer.ObjectVisitor> visitors) {
+		final List<Region> regions = renderer.getSubdividedRegions();
+		
+		for (int regionId = 0; regionId < regions.size(); ++regionId) {
+			final Region region = regions.get(regionId);
+			final RegionRenderer regionRenderer = renderer.getRegionRenderer(region.getLabel());
+			
+			if (regionRenderer instanceof AdjacentObjectsRenderer) {
+				((AdjacentObjectsRenderer) regionRenderer).forEachObject(region, visitors.apply(regionId));
+			}
+		}
+	}
+	
+	private static final int cell(final double x, final double y, final int cellWidth, final int cellHeight,
+			final int columnCount, final int rowCount) {
+		final int column = (int) min(columnCount - 1, max(0.0, floor(x / cellWidth)));
+		final int row = (int) min(rowCount - 1, max(0.0, floor(y / cellHeight)));
+		
+		return row * columnCount + column;
+	}
+	
+	private static final long align(final long offset) {
+		return (offset + 7L) & ~7L;
+	}
+	
+	/**
+	 * Each column is mapped separately, which limits the export to 2^28 objects.
+	 */
+	private static final ByteBuffer map(final FileChannel channel, final long offset, final long size) {
+		if (Integer.MAX_VALUE < size) {
+			throw new IllegalArgumentException("Section too large: " + size + " bytes");
+		}
+		
+		try {
+			final MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+			
+			result.order(ByteOrder.LITTLE_ENDIAN);
+			
+			return result;
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+}
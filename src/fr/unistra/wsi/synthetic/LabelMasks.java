@@ -0,0 +1,250 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.tileName;
+import static java.lang.Math.sqrt;
+import static multij.tools.Tools.unchecked;
+
+import imj2.tools.Canvas;
+import imj2.tools.OutputSource;
+import imj2.tools.PyramidBuilder;
+import imj2.tools.TileCodec;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Label maps of a slide, rendered by {@link TilePipeline} in the same pass as the image tiles
+ * and written losslessly into a WSI of their own, whose upper levels are reduced by majority instead of averaging.
+ * <br>Each pixel is the index of its label in {@link #getLabels()}, <code>0</code> being the background;
+ * tiles are palette PNGs, colored with {@link ModelMaker#labelColors} where possible so that they can also be viewed.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class LabelMasks {
+	
+	private final ModelRenderer renderer;
+	
+	private final OutputSource output;
+	
+	private final String imageName;
+	
+	private final TileCodec codec;
+	
+	private final List<String> labels;
+	
+	private final Map<String, Color> labelColors;
+	
+	private final IndexColorModel colorModel;
+	
+	private final PyramidBuilder pyramid;
+	
+	/**
+	 * @param lodCount
+	 * <br>Number of levels built above the base level, as for the image
+	 */
+	public LabelMasks(final ModelRenderer renderer, final OutputSource output, final String imageName,
+			final int width, final int height, final int tileWidth, final int tileHeight, final int lodCount) {
+		this.renderer = renderer;
+		this.output = output;
+		this.imageName = imageName;
+		this.codec = new TileCodec.Png();
+		this.labels = newLabelList(renderer);
+		
+		if (MAXIMUM_LABEL_COUNT < this.labels.size()) {
+			throw new IllegalArgumentException("Too many labels for 8-bit masks: " + this.labels.size());
+		}
+		
+		this.labelColors = new HashMap<>();
+		this.colorModel = newColorModel(this.labels, this.labelColors);
+		this.pyramid = new PyramidBuilder(width, height, tileWidth, tileHeight, lodCount, false,
+				BufferedImage.TYPE_BYTE_GRAY, PyramidBuilder::reduceMajority, (lod, tileX, tileY, tile) -> this.write(tile, lod, tileX, tileY));
+	}
+	
+	public final OutputSource getOutput() {
+		return this.output;
+	}
+	
+	public final PyramidBuilder getPyramid() {
+		return this.pyramid;
+	}
+	
+	/**
+	 * @return the labels by index, starting with the background
+	 */
+	public final List<String> getLabels() {
+		return this.labels;
+	}
+	
+	/**
+	 * @return a background mask
+	 */
+	public final BufferedImage newTile(final int width, final int height) {
+		return new BufferedImage(this.colorModel, this.colorModel.createCompatibleWritableRaster(width, height), false, null);
+	}
+	
+	/**
+	 * Renders the mask of the tile at (<code>tileX</code>, <code>tileY</code>), which is <code>width</code> by <code>height</code> pixels
+	 * and normally <code>tileWidth</code> by <code>tileHeight</code>, in a level where a model unit is <code>scale</code> pixels wide.
+	 */
+	public final BufferedImage render(final int tileX, final int tileY, final int width, final int height,
+			final int tileWidth, final int tileHeight, final double scale) {
+		final BufferedImage result = this.newTile(width, height);
+		final Canvas canvas = new Canvas().setImage(result);
+		final Graphics2D g = canvas.getGraphics();
+		
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		g.translate(-tileX, -tileY);
+		g.scale(scale, scale);
+		
+		this.renderer.renderLabelsTo(canvas, this.labelColors, tileX, tileY, tileWidth, tileHeight);
+		
+		g.dispose();
+		
+		return result;
+	}
+	
+	/**
+	 * Writes a base mask and reduces it into the upper levels; can be called concurrently.
+	 */
+	public final void add(final int tileX, final int tileY, final BufferedImage tile) {
+		this.write(tile, 0, tileX, tileY);
+		this.pyramid.add(tileX, tileY, tile);
+	}
+	
+	/**
+	 * Reads back a mask written by an interrupted run to build its parent.
+	 */
+	public final void resume(final int lod, final int tileX, final int tileY) {
+		try (final InputStream input = this.output.reopen(this.getEntryName(lod, tileX, tileY))) {
+			final BufferedImage image = this.codec.read(input);
+			final BufferedImage tile = this.newTile(image.getWidth(), image.getHeight());
+			
+			tile.getRaster().setRect(image.getRaster());
+			
+			this.pyramid.add(lod, tileX, tileY, tile);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the mask of the tile at (<code>tileX</code>, <code>tileY</code>) in level <code>lod</code>
+	 * was recovered from an interrupted run
+	 */
+	public final boolean restore(final int lod, final int tileX, final int tileY) {
+		return this.output.restore(this.getEntryName(lod, tileX, tileY));
+	}
+	
+	/**
+	 * @return the WSI metadata of the masks, listing the labels as <code>label</code> elements
+	 * with their <code>index</code>, <code>name</code> and palette <code>color</code>
+	 */
+	public final Document newMetadata() {
+		final Document result = GenerateWSI.newMetadata(this.pyramid, this.codec);
+		
+		for (int i = 0; i < this.labels.size(); ++i) {
+			final Element label = (Element) result.getDocumentElement().appendChild(result.createElement("label"));
+			
+			label.setAttribute("index", "" + i);
+			label.setAttribute("name", this.labels.get(i));
+			label.setAttribute("color", String.format("#%06x", this.colorModel.getRGB(i) & 0x00FFFFFF));
+		}
+		
+		return result;
+	}
+	
+	private final String getEntryName(final int lod, final int tileX, final int tileY) {
+		return tileName(this.imageName, lod, tileX, tileY, this.codec);
+	}
+	
+	/**
+	 * Skips the masks restored from an interrupted run, whose image tile may still have been rendered again.
+	 */
+	private final void write(final BufferedImage tile, final int lod, final int tileX, final int tileY) {
+		final String entryName = this.getEntryName(lod, tileX, tileY);
+		
+		if (this.output.contains(entryName)) {
+			return;
+		}
+		
+		final TilePipeline.Buffer buffer = new TilePipeline.Buffer();
+		
+		try {
+			// The upper levels are built in plain byte images, which only need the palette
+			this.codec.write(new BufferedImage(this.colorModel, tile.getRaster(), false, null), lod, buffer);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.output.write(entryName, buffer.getData(), buffer.size());
+	}
+	
+	/**
+	 * The label of the background, whose index is <code>0</code>.
+	 */
+	public static final String BACKGROUND_LABEL = "";
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int MAXIMUM_LABEL_COUNT = 256;
+	
+	/**
+	 * @return {@link #BACKGROUND_LABEL} followed by the labels of <code>renderer</code>, giving the index of each label
+	 */
+	public static final List<String> newLabelList(final ModelRenderer renderer) {
+		final List<String> result = new ArrayList<>();
+		
+		result.add(BACKGROUND_LABEL);
+		
+		renderer.getLabels().stream().filter(label -> !BACKGROUND_LABEL.equals(label)).forEach(result::add);
+		
+		return result;
+	}
+	
+	/**
+	 * Gives each label a distinct color, which {@link Graphics2D} maps back to its index;
+	 * the background has {@link TilePipeline#BACKGROUND} and the labels missing from {@link ModelMaker#labelColors}
+	 * get hues spread by the golden ratio.
+	 */
+	static final IndexColorModel newColorModel(final List<String> labels, final Map<String, Color> labelColors) {
+		final int n = labels.size();
+		final byte[] reds = new byte[n];
+		final byte[] greens = new byte[n];
+		final byte[] blues = new byte[n];
+		final Set<Integer> usedColors = new HashSet<>();
+		
+		for (int i = 0; i < n; ++i) {
+			Color color = i == 0 ? TilePipeline.BACKGROUND : ModelMaker.labelColors.get(labels.get(i));
+			
+			for (int k = 0; color == null || !usedColors.add(color.getRGB()); ++k) {
+				color = Color.getHSBColor((float) ((i + k * n) * GOLDEN_RATIO % 1.0), 0.75F, 0.9F);
+			}
+			
+			reds[i] = (byte) color.getRed();
+			greens[i] = (byte) color.getGreen();
+			blues[i] = (byte) color.getBlue();
+			
+			labelColors.put(labels.get(i), color);
+		}
+		
+		return new IndexColorModel(8, n, reds, greens, blues);
+	}
+	
+	static final double GOLDEN_RATIO = (1.0 + sqrt(5.0)) / 2.0;
+	
+}
@@ -0,0 +1,207 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.MAXIMUM_LOD;
+import static fr.unistra.wsi.synthetic.GenerateWSI.MONITOR_PERIOD_MILLISECONDS;
+import static fr.unistra.wsi.synthetic.GenerateWSI.newMetadata;
+import static fr.unistra.wsi.synthetic.GenerateWSI.newTileCodec;
+import static fr.unistra.wsi.synthetic.GenerateWSI.shardBase;
+import static fr.unistra.wsi.synthetic.GenerateWSI.tileName;
+import static multij.tools.Tools.array;
+import static multij.tools.Tools.unchecked;
+import static multij.xml.XMLTools.getNode;
+import static multij.xml.XMLTools.getNumber;
+import static multij.xml.XMLTools.parse;
+
+import imj2.tools.InputSource;
+import imj2.tools.OutputSource;
+import imj2.tools.PyramidBuilder;
+import imj2.tools.TileCodec;
+import imj2.zipslideviewer.ZipSlideViewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import multij.tools.CommandLineArgumentsParser;
+import multij.tools.ConsoleMonitor;
+import multij.tools.IllegalInstantiationException;
+import multij.tools.TicToc;
+import multij.xml.XMLTools;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Combines the archives rendered by <code>GenerateWSI shard i/N</code> into the final WSI.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class MergeWSI {
+	
+	private MergeWSI() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @param commandLineArguments
+	 * <br>Must not be null
+	 */
+	public static final void main(final String[] commandLineArguments) throws IOException {
+		final CommandLineArgumentsParser arguments = new CommandLineArgumentsParser(commandLineArguments);
+		final String outputBase = arguments.get("output", "");
+		final int shardCount = arguments.get("shardCount", 0)[0];
+		final File outputFile = new File(outputBase + ".zip");
+		final File partialOutputFile = new File(outputBase + ".part.zip");
+		final boolean showResult = arguments.get("show", 1)[0] != 0;
+		final TilePipeline.Settings settings = new TilePipeline.Settings();
+		final TicToc timer = new TicToc();
+		
+		if (outputBase.isEmpty() || shardCount < 1) {
+			throw new IllegalArgumentException("Usage: output <file path> shardCount <integer>");
+		}
+		
+		settings.setEncodeThreadCount(arguments.get("encodeThreads", settings.getEncodeThreadCount())[0])
+				.setWriteThreadCount(arguments.get("writeThreads", settings.getWriteThreadCount())[0]);
+		settings.setQueueCapacity(arguments.get("queueCapacity", settings.getQueueCapacity())[0]);
+		
+		if (!outputFile.exists()) {
+			System.out.println("Merging WSI... " + new Date(timer.tic()));
+			
+			final InputSource[] shards = new InputSource[shardCount];
+			
+			try {
+				for (int i = 0; i < shardCount; ++i) {
+					shards[i] = new InputSource(shardBase(outputBase, i, shardCount) + ".zip");
+				}
+				
+				final Document shardMetadata = readMetadata(shards[0]);
+				final TileCodec codec = newTileCodec(shardMetadata.getDocumentElement().getAttribute("tileFormat"),
+						arguments.get("quality", "" + TileCodec.DEFAULT_JPEG_QUALITY), arguments.get("chromaSubsampling", 1)[0] != 0);
+				
+				for (int i = 0; i < shardCount; ++i) {
+					final String shard = readMetadata(shards[i]).getDocumentElement().getAttribute("shard");
+					
+					if (!(i + "/" + shardCount).equals(shard)) {
+						throw new IllegalArgumentException("Unexpected shard " + shard + " in " + shardBase(outputBase, i, shardCount));
+					}
+				}
+				
+				try (final OutputSource output = new OutputSource(partialOutputFile.getPath())) {
+					final Document metadata = merge(shards, shardMetadata, output, new File(outputBase).getName(), codec, settings);
+					
+					try (final OutputStream entryOutput = output.open("metadata.xml")) {
+						XMLTools.write(metadata, entryOutput, 0);
+					}
+				}
+			} finally {
+				for (final InputSource shard : shards) {
+					if (shard != null) {
+						shard.close();
+					}
+				}
+			}
+			
+			Files.move(partialOutputFile.toPath(), outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(OutputSource.journalFile(partialOutputFile.getPath()).toPath());
+			
+			System.out.println("WSI merged in " + timer.toc() + " ms");
+		}
+		
+		if (showResult) {
+			ZipSlideViewer.main(array("file", outputFile.getPath()));
+		}
+	}
+	
+	/**
+	 * Copies the base tiles of <code>shards</code> into <code>output</code> and builds the upper levels.
+	 * 
+	 * @return the WSI metadata, to be written by the caller
+	 */
+	public static final Document merge(final InputSource[] shards, final Document shardMetadata,
+			final OutputSource output, final String imageName, final TileCodec codec,
+			final TilePipeline.Settings settings) {
+		final ConsoleMonitor monitor = new ConsoleMonitor(MONITOR_PERIOD_MILLISECONDS);
+		final Element baseImage = (Element) getNode(shardMetadata, "image/subimage[@id='0']");
+		final int width = getNumber(baseImage, "@width").intValue();
+		final int height = getNumber(baseImage, "@height").intValue();
+		final int tileWidth = getNumber(baseImage, "@tileWidth").intValue();
+		final int tileHeight = getNumber(baseImage, "@tileHeight").intValue();
+		final TilePipeline pipeline = new TilePipeline(null, TilePostProcessor.NONE, codec, output, imageName,
+				width, height, tileWidth, tileHeight, MAXIMUM_LOD, settings);
+		final PyramidBuilder pyramid = pipeline.getPyramid();
+		final Set<String> copiedEntries = new HashSet<>();
+		
+		try {
+			pipeline.restore();
+			
+			for (int tileY = 0; tileY < height; tileY += tileHeight) {
+				for (int tileX = 0; tileX < width; tileX += tileWidth) {
+					if (!pipeline.isCompleted(0, tileX, tileY)) {
+						final InputSource shard = shards[pyramid.getTileIndex(0, tileX, tileY) % shards.length];
+						final String entryName = tileName(imageName, 0, tileX, tileY, codec);
+						
+						if (!shard.contains(entryName)) {
+							throw new IllegalStateException("Missing tile: " + entryName);
+						}
+						
+						monitor.ping("Copying " + tileX + " " + tileY + " / " + width + " " + height + "\r");
+						
+						final String target = shard.resolve(entryName);
+						
+						if (!target.equals(entryName) && output.isReferencing()) {
+							// The shared payload is copied once, unless it was restored
+							if (!output.contains(target) && copiedEntries.add(target)) {
+								final byte[] data = read(shard, target);
+								
+								output.write(target, data, data.length);
+							}
+							
+							output.reference(entryName, target);
+						} else {
+							final byte[] data = read(shard, entryName);
+							
+							output.write(entryName, data, data.length);
+						}
+						
+						pipeline.setCompleted(0, tileX, tileY);
+					}
+				}
+			}
+			
+			pipeline.submitAll(monitor);
+		} finally {
+			pipeline.close();
+		}
+		
+		monitor.pause();
+		
+		if (pyramid.getPendingTileCount() != 0) {
+			throw new IllegalStateException("Incomplete pyramid: " + pyramid.getPendingTileCount() + " pending tiles");
+		}
+		
+		return newMetadata(pyramid, codec);
+	}
+	
+	static final Document readMetadata(final InputSource input) {
+		try (final InputStream xml = input.open("metadata.xml")) {
+			return parse(xml);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	static final byte[] read(final InputSource input, final String key) {
+		try (final InputStream entryInput = input.open(key)) {
+			return InputSource.readAll(entryInput);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+}
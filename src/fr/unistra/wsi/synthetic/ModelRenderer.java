@@ -1,13 +1,18 @@
 package fr.unistra.wsi.synthetic;
 
+import static java.util.stream.Collectors.toList;
 import static multij.tools.Tools.unchecked;
 import static fr.unistra.wsi.synthetic.GenerateWSI.MAXIMUM_CPU_LOAD;
 import static fr.unistra.wsi.synthetic.GenerateWSI.RENDERERS_FILE;
 
 import imj2.tools.Canvas;
+import imj2.tools.MemoryBudget;
 
+import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.geom.Area;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -18,6 +23,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,6 +42,8 @@ public final class ModelRenderer implements Serializable {
 	
 	private final List<Region> subdividedRegions;
 	
+	private transient BucketGrid regionIndex;
+	
 	public ModelRenderer(final Model model) {
 		this.model = model;
 		this.regionRenderers = new HashMap<>();
@@ -50,6 +58,14 @@ public final class ModelRenderer implements Serializable {
 		return this.regionRenderers;
 	}
 	
+	/**
+	 * @return the regions of the model split into parts smaller than {@link #SUBDIVISION_THRESHOLD},
+	 * which are solved and rendered separately; empty until {@link #beforeRender()}
+	 */
+	public final List<Region> getSubdividedRegions() {
+		return this.subdividedRegions;
+	}
+	
 	public final RegionRenderer getRegionRenderer(final String label) {
 		return this.getRegionRenderers().getOrDefault(label, RegionRenderer.DEFAULT);
 	}
@@ -59,81 +75,228 @@ public final class ModelRenderer implements Serializable {
 	}
 	
 	public final void beforeRender() {
-		if (!this.subdividedRegions.isEmpty()) {
+		if (this.regionIndex != null) {
 			return;
 		}
 		
+		if (this.subdividedRegions.isEmpty()) {
+			this.subdivide();
+			this.solve(this.subdividedRegions, true);
+		}
+		
+		this.updateRegionIndex();
+	}
+	
+	/**
+	 * Only solves the layout of the subdivided regions whose rendering bounds intersect <code>areas</code>;
+	 * the result is not saved in {@link GenerateWSI#RENDERERS_FILE}, which must not hold a partial layout.
+	 * 
+	 * @param areas
+	 * <br>In model space
+	 */
+	public final void beforeRender(final Collection<Rectangle> areas) {
+		if (this.subdividedRegions.isEmpty()) {
+			this.subdivide();
+		}
+		
+		this.solve(this.subdividedRegions.stream().filter(r -> {
+			final Rectangle bounds = this.getRegionRenderer(r.getLabel()).getBounds(r);
+			
+			return areas.stream().anyMatch(bounds::intersects);
+		}).collect(toList()), false);
+		
+		this.updateRegionIndex();
+	}
+	
+	private final void updateRegionIndex() {
+		this.regionIndex = new BucketGrid(this.subdividedRegions.stream().map(
+				r -> this.getRegionRenderer(r.getLabel()).getBounds(r)).collect(toList()), REGION_INDEX_CELL_SIZE);
+	}
+	
+	private final void subdivide() {
 		this.getModel().getRegions().forEach(c -> {
 			subdivideRegion(c, SUBDIVISION_THRESHOLD, this.subdividedRegions);
 		});
+	}
+	
+	private final void solve(final List<Region> regions, final boolean save) {
+		final TaskManager tasks = new TaskManager(MAXIMUM_CPU_LOAD);
+		final int n = tasks.getWorkerCount();
+		final int[] i = { 0 };
+		final Semaphore semaphore = new Semaphore(n);
+		final AtomicBoolean terminate = new AtomicBoolean();
+		final AtomicInteger lastUpdate = new AtomicInteger();
+		final Path renderersPath = FileSystems.getDefault().getPath(RENDERERS_FILE.getPath());
+		final Path renderersBackupPath = FileSystems.getDefault().getPath(RENDERERS_FILE.getPath() + ".bak");
+		final int subdividedRegionCount = regions.size();
+		final MemoryBudget budget = MemoryBudget.getInstance();
 		
-		{
-			final TaskManager tasks = new TaskManager(MAXIMUM_CPU_LOAD);
-			final int n = tasks.getWorkerCount();
-			final int[] i = { 0 };
-			final Semaphore semaphore = new Semaphore(n);
-			final AtomicBoolean terminate = new AtomicBoolean();
-			final AtomicInteger lastUpdate = new AtomicInteger();
-			final Path renderersPath = FileSystems.getDefault().getPath(RENDERERS_FILE.getPath());
-			final Path renderersBackupPath = FileSystems.getDefault().getPath(RENDERERS_FILE.getPath() + ".bak");
-			final int subdividedRegionCount = this.subdividedRegions.size();
+		regions.forEach(c -> {
+			final int taskId = ++i[0];
 			
-			this.subdividedRegions.forEach(c -> {
-				final int taskId = ++i[0];
+			tasks.submit(new Runnable() {
 				
-				tasks.submit(new Runnable() {
+				@Override
+				public final void run() {
+					if (terminate.get()) {
+						return;
+					}
+					
+					Tools.debugPrint(taskId + " / " + subdividedRegionCount);
+					
+					final long footprint = ModelRenderer.this.getRegionRenderer(c.getLabel()).estimateSolveMemory(c);
 					
-					@Override
-					public final void run() {
-						if (terminate.get()) {
-							return;
+					try {
+						budget.acquire(footprint);
+						semaphore.acquire();
+						final boolean renderersUpdated;
+						
+						try {
+							renderersUpdated = ModelRenderer.this.beforeRenderRegion(c);
+						} finally {
+							budget.release(footprint);
 						}
 						
-						Tools.debugPrint(taskId + " / " + subdividedRegionCount);
+						semaphore.release();
 						
-						try {
-							semaphore.acquire();
-							final boolean renderersUpdated = ModelRenderer.this.beforeRenderRegion(c);
-							semaphore.release();
+						if (renderersUpdated && save) {
+							final int thisUpdate = lastUpdate.incrementAndGet();
 							
-							if (renderersUpdated) {
-								final int thisUpdate = lastUpdate.incrementAndGet();
-								
-								semaphore.acquire(n);
-								if (thisUpdate == lastUpdate.get()) {
-									Tools.debugPrint(Thread.currentThread(), thisUpdate);
-									try {
-										Tools.writeObject(ModelRenderer.this, RENDERERS_FILE.getPath() + ".bak");
-										Files.move(renderersBackupPath, renderersPath, StandardCopyOption.REPLACE_EXISTING);
-									} catch (final Exception exception) {
-										exception.printStackTrace();
-									}
+							semaphore.acquire(n);
+							if (thisUpdate == lastUpdate.get()) {
+								Tools.debugPrint(Thread.currentThread(), thisUpdate);
+								try {
+									Tools.writeObject(ModelRenderer.this, RENDERERS_FILE.getPath() + ".bak");
+									Files.move(renderersBackupPath, renderersPath, StandardCopyOption.REPLACE_EXISTING);
+								} catch (final Exception exception) {
+									exception.printStackTrace();
 								}
-								semaphore.release(n);
 							}
-						} catch (final Exception exception) {
-							exception.printStackTrace();
-							terminate.set(true);
 							semaphore.release(n);
-							throw unchecked(exception);
 						}
+					} catch (final Exception exception) {
+						exception.printStackTrace();
+						terminate.set(true);
+						semaphore.release(n);
+						throw unchecked(exception);
 					}
-					
-				});
+				}
+				
 			});
-			
-			tasks.join();
-		}
+		});
+		
+		tasks.join();
 	}
 	
 	public final void renderTo(final Canvas buffer, final int tileX, final int tileY, final int optimalTileWidth, final int optimalTileHeight) {
-		this.subdividedRegions.forEach(c -> {
-			this.renderRegion(c, buffer, tileX, tileY, optimalTileWidth, optimalTileHeight);
+		final GenerationEvents.TileRendering event = new GenerationEvents.TileRendering();
+		final BucketGrid regionIndex = this.regionIndex;
+		int regionCount = 0;
+		
+		event.begin();
+		
+		if (regionIndex == null) {
+			for (final Region region : this.subdividedRegions) {
+				this.renderRegion(region, buffer, tileX, tileY, optimalTileWidth, optimalTileHeight);
+				++regionCount;
+			}
+		} else {
+			for (final int i : regionIndex.query(getVisibleBounds(buffer))) {
+				this.renderRegion(this.subdividedRegions.get(i), buffer, tileX, tileY, optimalTileWidth, optimalTileHeight);
+				++regionCount;
+			}
+		}
+		
+		if (event.shouldCommit()) {
+			event.tileX = tileX;
+			event.tileY = tileY;
+			event.width = buffer.getWidth();
+			event.height = buffer.getHeight();
+			event.regionCount = regionCount;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Same as {@link #renderTo(Canvas, int, int, int, int)} for the label map, see {@link RegionRenderer#renderLabels(Region, Canvas, Map, int, int, int, int)}.
+	 */
+	public final void renderLabelsTo(final Canvas buffer, final Map<String, Color> labelColors,
+			final int tileX, final int tileY, final int optimalTileWidth, final int optimalTileHeight) {
+		final BucketGrid regionIndex = this.regionIndex;
+		
+		if (regionIndex == null) {
+			for (final Region region : this.subdividedRegions) {
+				this.getRegionRenderer(region.getLabel()).renderLabels(region, buffer, labelColors,
+						tileX, tileY, optimalTileWidth, optimalTileHeight);
+			}
+		} else {
+			for (final int i : regionIndex.query(getVisibleBounds(buffer))) {
+				final Region region = this.subdividedRegions.get(i);
+				
+				this.getRegionRenderer(region.getLabel()).renderLabels(region, buffer, labelColors,
+						tileX, tileY, optimalTileWidth, optimalTileHeight);
+			}
+		}
+	}
+	
+	/**
+	 * @return the sorted labels of the regions of the model and of the objects drawn by their renderers
+	 */
+	public final List<String> getLabels() {
+		final TreeSet<String> result = new TreeSet<>();
+		
+		this.getModel().getRegions().forEach(r -> {
+			result.add(r.getLabel());
+			result.addAll(this.getRegionRenderer(r.getLabel()).getObjectLabels());
 		});
+		
+		return new ArrayList<>(result);
+	}
+	
+	/**
+	 * @param area
+	 * <br>In model space
+	 * @return <code>true</code> if no region can be drawn in <code>area</code>,
+	 * <code>false</code> if the region index is not built yet
+	 */
+	public final boolean isBlank(final Rectangle2D area) {
+		final BucketGrid regionIndex = this.regionIndex;
+		final Rectangle bounds = area.getBounds();
+		
+		// Antialiased edges may spill over the rendering bounds
+		bounds.grow(1, 1);
+		
+		return regionIndex != null && regionIndex.query(bounds).length == 0;
+	}
+	
+	/**
+	 * @return an estimate of the heap needed to render, post-process and encode a tile, in bytes
+	 */
+	public final long estimateRenderMemory(final int tileWidth, final int tileHeight) {
+		return 2L * 3L * tileWidth * tileHeight + this.getRegionRenderers().values().stream().mapToLong(
+				r -> r.estimateRenderMemory(tileWidth, tileHeight)).max().orElse(0L);
 	}
 	
 	final boolean beforeRenderRegion(final Region region) {
-		return this.getRegionRenderer(region.getLabel()).beforeRender(region);
+		final GenerationEvents.RegionPreparation event = new GenerationEvents.RegionPreparation();
+		
+		event.begin();
+		
+		final boolean result = this.getRegionRenderer(region.getLabel()).beforeRender(region);
+		
+		if (event.shouldCommit()) {
+			final Rectangle bounds = region.getGeometry().getBounds();
+			
+			event.region = region.getLabel();
+			event.x = bounds.x;
+			event.y = bounds.y;
+			event.width = bounds.width;
+			event.height = bounds.height;
+			event.solved = result;
+			event.commit();
+		}
+		
+		return result;
 	}
 	
 	final void renderRegion(final Region region, final Canvas buffer, final int tileX, final int tileY, final int optimalTileWidth, final int optimalTileHeight) {
@@ -147,6 +310,20 @@ public final class ModelRenderer implements Serializable {
 	
 	public static final int SUBDIVISION_THRESHOLD = 64000;
 	
+	public static final int REGION_INDEX_CELL_SIZE = 4096;
+	
+	/**
+	 * @return the model-space box covered by <code>buffer</code> under its current transform
+	 */
+	public static final Rectangle getVisibleBounds(final Canvas buffer) {
+		try {
+			return buffer.getGraphics().getTransform().createInverse().createTransformedShape(
+					new Rectangle(buffer.getWidth(), buffer.getHeight())).getBounds();
+		} catch (final NoninvertibleTransformException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
 	public static final Collection<Region> subdivideRegion(final Region region, final int maximumDimension, final Collection<Region> result) {
 		final Rectangle bounds = region.getGeometry().getBounds();
 		
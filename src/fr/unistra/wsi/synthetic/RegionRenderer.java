@@ -1,9 +1,15 @@
 package fr.unistra.wsi.synthetic;
 
+import static java.util.Collections.emptyList;
+
 import imj2.tools.Canvas;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * @author ga (creation 2014-09-12)
@@ -14,8 +20,51 @@ public abstract interface RegionRenderer extends Serializable {
 		return false;
 	}
 	
+	/**
+	 * @return an estimate of the heap needed by {@link #beforeRender(Region)} while it runs, in bytes
+	 */
+	public default long estimateSolveMemory(final Region region) {
+		return 0L;
+	}
+	
+	/**
+	 * @return an estimate of the heap needed by {@link #render(Region, Canvas, int, int, int, int)}
+	 * besides the tile, in bytes
+	 */
+	public default long estimateRenderMemory(final int tileWidth, final int tileHeight) {
+		return 0L;
+	}
+	
+	/**
+	 * @return the model-space box outside of which {@link #render(Region, Canvas, int, int, int, int)} draws nothing
+	 */
+	public default Rectangle getBounds(final Region region) {
+		return region.getGeometry().getBounds();
+	}
+	
 	public abstract void render(Region region, Canvas buffer, int tileX, int tileY, int optimalTileWidth, int optimalTileHeight);
 	
+	/**
+	 * @return the labels that {@link #renderLabels(Region, Canvas, Map, int, int, int, int)} may draw
+	 * besides the label of the region
+	 */
+	public default Collection<String> getObjectLabels() {
+		return emptyList();
+	}
+	
+	/**
+	 * Draws the label map of <code>region</code> as {@link #render(Region, Canvas, int, int, int, int)} draws its pixels,
+	 * without antialiasing, each label with its color in <code>labelColors</code>.
+	 */
+	public default void renderLabels(final Region region, final Canvas buffer, final Map<String, Color> labelColors,
+			final int tileX, final int tileY, final int optimalTileWidth, final int optimalTileHeight) {
+		final Graphics2D g = buffer.getGraphics();
+		
+		g.setColor(labelColors.get(region.getLabel()));
+		
+		g.fill(ClippedGeometry.get(region, buffer, optimalTileWidth, optimalTileHeight));
+	}
+	
 	public static final RegionRenderer DEFAULT = new RegionRenderer() {
 		
 		@Override
@@ -25,7 +74,7 @@ public abstract interface RegionRenderer extends Serializable {
 			
 			g.setColor(ModelMaker.labelColors.get(region.getLabel()));
 			
-			g.fill(region.getGeometry());
+			g.fill(ClippedGeometry.get(region, buffer, optimalTileWidth, optimalTileHeight));
 		}
 		
 		/**
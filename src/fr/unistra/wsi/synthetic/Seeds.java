@@ -0,0 +1,90 @@
+package fr.unistra.wsi.synthetic;
+
+import java.awt.geom.Rectangle2D;
+
+import multij.tools.IllegalInstantiationException;
+
+/**
+ * Seed hierarchy of a slide: the slide seed gives one stream per region, derived from a stable region id,
+ * and one stream per tile, so that parallel solving and rendering neither share a generator nor depend on scheduling.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class Seeds {
+	
+	private Seeds() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @return the seed of the layout of <code>region</code>
+	 */
+	public static final long regionSeed(final long slideSeed, final Region region) {
+		return mix(mix(slideSeed ^ REGION_STREAM) ^ regionId(region));
+	}
+	
+	/**
+	 * @return a hash of the label, bounds and area of <code>region</code>,
+	 * which depends neither on the order of the regions nor on the run
+	 */
+	public static final long regionId(final Region region) {
+		final Rectangle2D bounds = region.getGeometry().getBounds2D();
+		long result = region.getLabel().hashCode();
+		
+		result = mix(result ^ Double.doubleToLongBits(bounds.getX()));
+		result = mix(result ^ Double.doubleToLongBits(bounds.getY()));
+		result = mix(result ^ Double.doubleToLongBits(bounds.getWidth()));
+		result = mix(result ^ Double.doubleToLongBits(bounds.getHeight()));
+		
+		return mix(result ^ Double.doubleToLongBits(region.computeArea()));
+	}
+	
+	/**
+	 * @return the seed from which the tiles that no region touches draw their background variant
+	 */
+	public static final long backgroundSeed(final long slideSeed) {
+		return mix(slideSeed ^ BACKGROUND_STREAM);
+	}
+	
+	/**
+	 * @return a well-mixed seed, so that neighboring tiles get unrelated streams
+	 */
+	public static final long tileSeed(final long seed, final int tileX, final int tileY) {
+		return mix(mix(seed ^ (tileX * 0x9E3779B97F4A7C15L)) ^ (tileY * 0xC2B2AE3D27D4EB4FL));
+	}
+	
+	/**
+	 * @return {@link #tileSeed(long, int, int)} for the base level, otherwise a seed from a stream of its own for level <code>lod</code>
+	 */
+	public static final long tileSeed(final long seed, final int lod, final int tileX, final int tileY) {
+		return tileSeed(lod == 0 ? seed : mix(mix(seed ^ LOD_STREAM) ^ lod), tileX, tileY);
+	}
+	
+	/**
+	 * MurmurHash3 64-bit finalizer.
+	 */
+	public static final long mix(final long value) {
+		long result = value;
+		
+		result = (result ^ (result >>> 33)) * 0xFF51AFD7ED558CCDL;
+		result = (result ^ (result >>> 33)) * 0xC4CEB9FCE1A7A3CBL;
+		
+		return result ^ (result >>> 33);
+	}
+	
+	/**
+	 * Separates the region streams from the tile streams of the same slide seed.
+	 */
+	static final long REGION_STREAM = 0x5DEECE66DL;
+	
+	/**
+	 * Separates the tile streams of the upper levels from those of the base level.
+	 */
+	static final long LOD_STREAM = 0x2545F4914F6CDD1DL;
+	
+	/**
+	 * Separates the choice of the background variants from the other streams of the same slide seed.
+	 */
+	static final long BACKGROUND_STREAM = 0x94D049BB133111EBL;
+	
+}
@@ -0,0 +1,139 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.MAXIMUM_LOD;
+import static fr.unistra.wsi.synthetic.GenerateWSI.newMetadata;
+import static fr.unistra.wsi.synthetic.GenerateWSI.newRenderer;
+import static fr.unistra.wsi.synthetic.GenerateWSI.newTileCodec;
+
+import imj2.tools.PyramidBuilder;
+import imj2.tools.TileCodec;
+import imj2.zipslideviewer.MultiFileImage2D;
+import imj2.zipslideviewer.TileServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import multij.tools.CommandLineArgumentsParser;
+import multij.tools.IllegalInstantiationException;
+
+import org.w3c.dom.Document;
+
+/**
+ * Serves the tiles of a WSI archive, or of a model rendered on demand, with a {@link TileServer} on the loopback interface.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class ServeWSI {
+	
+	private ServeWSI() {
+		throw new IllegalInstantiationException();
+	}
+	
+	/**
+	 * @param commandLineArguments
+	 * <br>Must not be null
+	 */
+	public static final void main(final String[] commandLineArguments) throws IOException {
+		final CommandLineArgumentsParser arguments = new CommandLineArgumentsParser(commandLineArguments);
+		final String file = arguments.get("file", "");
+		final int port = arguments.get("port", DEFAULT_PORT)[0];
+		final int threadCount = arguments.get("threads", Runtime.getRuntime().availableProcessors())[0];
+		final long cacheCapacity = (long) arguments.get("cacheSize", 256)[0] << 20;
+		final TileServer.TileSource source;
+		
+		if (!file.isEmpty()) {
+			source = new TileServer.ArchiveTileSource(new MultiFileImage2D(file));
+		} else {
+			final Model model = ModelMaker.readModel(new File(arguments.get("model",
+					ModelMaker.preferences.get(ModelMaker.MODEL_FILE_KEY, ModelMaker.MODEL_FILE_DEFAULT_PATH))));
+			final int tileWidth = arguments.get("tileWidth", SyntheticImage2D.DEFAULT_TILE_SIZE)[0];
+			final int tileHeight = arguments.get("tileHeight", tileWidth)[0];
+			final long seed = arguments.get("seed", 1)[0];
+			final TilePostProcessor postProcessor = new FusedPostProcessor(seed,
+					arguments.get("blur", 0)[0] != 0, arguments.get("colorJitter", 0)[0], arguments.get("noise", 1)[0] != 0);
+			final TileCodec codec = newTileCodec(arguments.get("tileFormat", TileCodec.DEFAULT_FORMAT),
+					arguments.get("quality", "" + TileCodec.DEFAULT_JPEG_QUALITY), arguments.get("chromaSubsampling", 1)[0] != 0);
+			
+			source = new SyntheticTileSource(new SyntheticImage2D(newRenderer(model, arguments.get("renderer", ""), seed),
+					postProcessor, tileWidth, tileHeight, arguments.get("renderCacheSize", SyntheticImage2D.DEFAULT_CACHE_CAPACITY)[0]),
+					codec);
+		}
+		
+		final TileServer server = new TileServer(source, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+				threadCount, cacheCapacity);
+		
+		System.out.println("Serving tiles at http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int DEFAULT_PORT = 8090;
+	
+	/**
+	 * Encodes the tiles of a {@link SyntheticImage2D}, which are rendered on demand.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	public static final class SyntheticTileSource implements TileServer.TileSource {
+		
+		private final SyntheticImage2D image;
+		
+		private final TileCodec codec;
+		
+		private final Document metadata;
+		
+		public SyntheticTileSource(final SyntheticImage2D image, final TileCodec codec) {
+			this.image = image;
+			this.codec = codec;
+			this.metadata = newMetadata(new PyramidBuilder(image.getWidth(), image.getHeight(),
+					image.getOptimalTileWidth(), image.getOptimalTileHeight(), MAXIMUM_LOD, (lod, tileX, tileY, tile) -> {
+						// NOP, only the geometry is used
+					}), codec);
+		}
+		
+		@Override
+		public final Document getMetadata() {
+			return this.metadata;
+		}
+		
+		@Override
+		public final String getFormat() {
+			return this.codec.getFormat();
+		}
+		
+		@Override
+		public final int getTileWidth() {
+			return this.image.getOptimalTileWidth();
+		}
+		
+		@Override
+		public final int getTileHeight() {
+			return this.image.getOptimalTileHeight();
+		}
+		
+		@Override
+		public final byte[] getTile(final int lod, final int tileX, final int tileY) throws IOException {
+			if (MAXIMUM_LOD < lod) {
+				return null;
+			}
+			
+			final SyntheticImage2D lodImage = (SyntheticImage2D) this.image.getLODImage(lod);
+			
+			if (lodImage.getWidth() <= tileX || lodImage.getHeight() <= tileY) {
+				return null;
+			}
+			
+			final ByteArrayOutputStream result = new ByteArrayOutputStream(1 << 16);
+			
+			this.codec.write(lodImage.getTile(tileX, tileY), lod, result);
+			
+			return result.toByteArray();
+		}
+		
+	}
+	
+}
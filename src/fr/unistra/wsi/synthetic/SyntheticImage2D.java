@@ -0,0 +1,225 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.SCALE;
+import static java.lang.Math.min;
+
+import imj2.core.IMJCoreTools;
+import imj2.core.Image;
+import imj2.core.Image2D;
+import imj2.core.TiledImage2D;
+import imj2.tools.Canvas;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A synthetic slide whose tiles are rendered when they are first accessed instead of being read from a WSI file.
+ * <br>All the levels share a bounded tile cache; the tiles of the upper levels are always rendered directly at their own scale,
+ * with noise seeded by their level, so that a tile does not depend on what was accessed before it.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class SyntheticImage2D extends TiledImage2D {
+	
+	private final ModelRenderer renderer;
+	
+	private final TilePostProcessor postProcessor;
+	
+	private final TileCache cache;
+	
+	private final Map<Integer, SyntheticImage2D> lodImages;
+	
+	private final int lod;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private BufferedImage tile;
+	
+	public SyntheticImage2D(final ModelRenderer renderer, final TilePostProcessor postProcessor) {
+		this(renderer, postProcessor, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, DEFAULT_CACHE_CAPACITY);
+	}
+	
+	/**
+	 * Solves the layout of <code>renderer</code> if needed, so that the tiles can then be rendered concurrently.
+	 * 
+	 * @param cacheCapacity
+	 * <br>Maximum number of tiles kept in memory for all the levels
+	 */
+	public SyntheticImage2D(final ModelRenderer renderer, final TilePostProcessor postProcessor,
+			final int tileWidth, final int tileHeight, final int cacheCapacity) {
+		this(renderer, postProcessor, tileWidth, tileHeight, new TileCache(cacheCapacity), new HashMap<>(), 0);
+		
+		renderer.beforeRender();
+	}
+	
+	private SyntheticImage2D(final ModelRenderer renderer, final TilePostProcessor postProcessor,
+			final int tileWidth, final int tileHeight, final TileCache cache, final Map<Integer, SyntheticImage2D> lodImages, final int lod) {
+		super("synthetic" + System.identityHashCode(cache) + "_lod" + lod);
+		this.renderer = renderer;
+		this.postProcessor = postProcessor;
+		this.cache = cache;
+		this.lodImages = lodImages;
+		this.lod = lod;
+		
+		{
+			final Rectangle bounds = renderer.getModel().getBounds();
+			
+			this.width = (int) (bounds.width * SCALE) >> lod;
+			this.height = (int) (bounds.height * SCALE) >> lod;
+		}
+		
+		this.lodImages.put(lod, this);
+		
+		this.setOptimalTileDimensions(tileWidth, tileHeight);
+	}
+	
+	public final ModelRenderer getRenderer() {
+		return this.renderer;
+	}
+	
+	@Override
+	public final int getWidth() {
+		return this.width;
+	}
+	
+	@Override
+	public final int getHeight() {
+		return this.height;
+	}
+	
+	@Override
+	public final int getLOD() {
+		return this.lod;
+	}
+	
+	@Override
+	public final Image2D getLODImage(final int lod) {
+		synchronized (this.lodImages) {
+			final SyntheticImage2D result = this.lodImages.get(lod);
+			
+			return result != null ? result : new SyntheticImage2D(this.renderer, this.postProcessor,
+					this.getOptimalTileWidth(), this.getOptimalTileHeight(), this.cache, this.lodImages, lod);
+		}
+	}
+	
+	@Override
+	public final SyntheticImage2D[] newParallelViews(final int n) {
+		return IMJCoreTools.newParallelViews(this, n);
+	}
+	
+	@Override
+	public final Channels getChannels() {
+		return PredefinedChannels.C3_U8;
+	}
+	
+	@Override
+	public final Image getSource() {
+		return null;
+	}
+	
+	@Override
+	protected final int getPixelValueFromTile(final int x, final int y, final int xInTile, final int yInTile) {
+		return this.tile.getRGB(xInTile, yInTile);
+	}
+	
+	@Override
+	protected final void setTilePixelValue(final int x, final int y, final int xInTile, final int yInTile, final int value) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public final BufferedImage updateTile() {
+		this.tile = this.getTile(this.getTileX(), this.getTileY());
+		
+		return this.tile;
+	}
+	
+	@Override
+	protected final boolean makeNewTile() {
+		return this.tile == null || this.tile.getWidth() != this.getTileWidth() || this.tile.getHeight() != this.getTileHeight();
+	}
+	
+	/**
+	 * Can be called concurrently; the result must not be modified.
+	 */
+	public final BufferedImage getTile(final int tileX, final int tileY) {
+		final String key = key(this.lod, tileX, tileY);
+		BufferedImage result = this.cache.get(key);
+		
+		if (result == null) {
+			result = this.render(tileX, tileY);
+			
+			this.cache.put(key, result);
+		}
+		
+		return result;
+	}
+	
+	private final BufferedImage render(final int tileX, final int tileY) {
+		final Canvas buffer = this.newTile(tileX, tileY);
+		
+		TilePipeline.render(this.renderer, this.postProcessor, buffer, this.lod, tileX, tileY,
+				this.getOptimalTileWidth(), this.getOptimalTileHeight(), SCALE / (1 << this.lod));
+		
+		return buffer.getImage();
+	}
+	
+	private final Canvas newTile(final int tileX, final int tileY) {
+		return new Canvas().setFormat(min(this.getOptimalTileWidth(), this.getWidth() - tileX),
+				min(this.getOptimalTileHeight(), this.getHeight() - tileY), BufferedImage.TYPE_3BYTE_BGR);
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	private static final long serialVersionUID = -4871006520960372215L;
+	
+	public static final int DEFAULT_TILE_SIZE = 512;
+	
+	public static final int DEFAULT_CACHE_CAPACITY = 256;
+	
+	static final String key(final int lod, final int tileX, final int tileY) {
+		return lod + "_" + tileX + "_" + tileY;
+	}
+	
+	/**
+	 * Least recently used tiles are evicted first.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class TileCache {
+		
+		private final Map<String, BufferedImage> tiles;
+		
+		TileCache(final int capacity) {
+			this.tiles = new LinkedHashMap<String, BufferedImage>(capacity, 0.75F, true) {
+				
+				@Override
+				protected final boolean removeEldestEntry(final Map.Entry<String, BufferedImage> eldest) {
+					return capacity < this.size();
+				}
+				
+				/**
+				 * {@value}.
+				 */
+				private static final long serialVersionUID = 2936218386424585717L;
+				
+			};
+		}
+		
+		final synchronized BufferedImage get(final String key) {
+			return this.tiles.get(key);
+		}
+		
+		final synchronized void put(final String key, final BufferedImage tile) {
+			this.tiles.put(key, tile);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,1003 @@
+package fr.unistra.wsi.synthetic;
+
+import static fr.unistra.wsi.synthetic.GenerateWSI.MAXIMUM_CPU_LOAD;
+import static fr.unistra.wsi.synthetic.GenerateWSI.SCALE;
+import static fr.unistra.wsi.synthetic.GenerateWSI.bgr;
+import static fr.unistra.wsi.synthetic.GenerateWSI.tileName;
+import static imj2.core.IMJCoreTools.quantize;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static multij.tools.Tools.unchecked;
+
+import imj2.tools.Canvas;
+import imj2.tools.DeepZoomTiler;
+import imj2.tools.InputSource;
+import imj2.tools.MemoryBudget;
+import imj2.tools.OutputSource;
+import imj2.tools.PipelineStage;
+import imj2.tools.PyramidBuilder;
+import imj2.tools.TileCodec;
+import imj2.tools.TilePool;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import multij.tools.ConsoleMonitor;
+
+/**
+ * Render, encode and write stages connected by bounded queues.
+ * <br>The number of rendered tiles in flight is bounded by the tile pool,
+ * so rendering slows down instead of filling the heap when the output falls behind.
+ * <br>Tiles that no region touches are not rendered: they get one of a few precomputed background tiles,
+ * whose payloads are written once and referenced by the tile entries when the output allows it.
+ * 
+ * @author ga (creation 2026-10-17)
+ */
+public final class TilePipeline implements Closeable {
+	
+	private final ModelRenderer renderer;
+	
+	private final TilePostProcessor postProcessor;
+	
+	private final TileCodec codec;
+	
+	private final OutputSource output;
+	
+	private final String imageName;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final int tileWidth;
+	
+	private final int tileHeight;
+	
+	private final TilePool tiles;
+	
+	private final PyramidBuilder pyramid;
+	
+	private final PipelineStage<EncodedTile> writeStage;
+	
+	private final PipelineStage<RenderedTile> encodeStage;
+	
+	private final PipelineStage<Runnable> renderStage;
+	
+	private final BitSet[] completedTiles;
+	
+	private final int shardIndex;
+	
+	private final int shardCount;
+	
+	private final int originX;
+	
+	private final int originY;
+	
+	private final double scale;
+	
+	private final boolean paddingTiles;
+	
+	private final boolean deepZoom;
+	
+	private final DeepZoomTiler deepZoomTiler;
+	
+	private final long tileFootprint;
+	
+	private final int backgroundVariantCount;
+	
+	private final long backgroundSeed;
+	
+	private final boolean referencing;
+	
+	private final Map<String, BackgroundTile> backgrounds;
+	
+	private final Set<String> sharedEntries;
+	
+	private final LabelMasks labels;
+	
+	public TilePipeline(final ModelRenderer renderer, final TilePostProcessor postProcessor, final TileCodec codec,
+			final OutputSource output, final String imageName, final int width, final int height,
+			final int tileWidth, final int tileHeight, final int lodCount, final Settings settings) {
+		this(renderer, postProcessor, codec, output, imageName, width, height, tileWidth, tileHeight, lodCount, settings, null);
+	}
+	
+	/**
+	 * @param labels
+	 * <br>Receives the label mask of each base tile, rendered after the tile itself; <code>null</code> for none
+	 */
+	public TilePipeline(final ModelRenderer renderer, final TilePostProcessor postProcessor, final TileCodec codec,
+			final OutputSource output, final String imageName, final int width, final int height,
+			final int tileWidth, final int tileHeight, final int lodCount, final Settings settings, final LabelMasks labels) {
+		this.renderer = renderer;
+		this.postProcessor = postProcessor;
+		this.codec = codec;
+		this.output = output;
+		this.imageName = imageName;
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.tiles = new TilePool(tileWidth, tileHeight, BufferedImage.TYPE_3BYTE_BGR,
+				settings.getRenderThreadCount() + settings.getQueueCapacity() + settings.getEncodeThreadCount());
+		this.pyramid = new PyramidBuilder(width, height, tileWidth, tileHeight, lodCount, settings.isDeepZoom(),
+				(lod, tileX, tileY, tile) -> this.output(tile, lod, tileX, tileY));
+		this.writeStage = new PipelineStage<>("write", settings.getWriteThreadCount(), settings.getQueueCapacity(),
+				this::write);
+		this.encodeStage = new PipelineStage<>("encode", settings.getEncodeThreadCount(), settings.getQueueCapacity(),
+				this::encode, this::discard);
+		this.renderStage = new PipelineStage<>("render", settings.getRenderThreadCount(), settings.getQueueCapacity(),
+				Runnable::run);
+		this.completedTiles = new BitSet[lodCount + 1];
+		this.shardIndex = settings.getShardIndex();
+		this.shardCount = settings.getShardCount();
+		this.paddingTiles = settings.isPaddingTiles();
+		this.deepZoom = settings.isDeepZoom();
+		this.tileFootprint = renderer == null ? 0L : renderer.estimateRenderMemory(tileWidth, tileHeight)
+				+ (labels == null ? 0L : (long) tileWidth * tileHeight);
+		this.backgroundVariantCount = renderer == null ? 0 : settings.getBackgroundVariantCount();
+		this.backgroundSeed = Seeds.backgroundSeed(settings.getSeed());
+		this.referencing = !this.deepZoom && output.isReferencing();
+		this.backgrounds = new ConcurrentHashMap<>();
+		this.sharedEntries = ConcurrentHashMap.newKeySet();
+		this.labels = labels;
+		this.deepZoomTiler = this.deepZoom && 0 < settings.getOverlap() ?
+				new DeepZoomTiler(this.pyramid, settings.getOverlap(), (lod, tileX, tileY, tile) -> this.encode(tile, lod, tileX, tileY)) : null;
+		
+		{
+			final Rectangle regionOfInterest = settings.getRegionOfInterest();
+			
+			this.originX = regionOfInterest == null ? 0 : regionOfInterest.x >> settings.getLOD();
+			this.originY = regionOfInterest == null ? 0 : regionOfInterest.y >> settings.getLOD();
+			this.scale = SCALE / (1 << settings.getLOD());
+		}
+		
+		for (int lod = 0; lod <= lodCount; ++lod) {
+			this.completedTiles[lod] = new BitSet();
+		}
+	}
+	
+	public final PyramidBuilder getPyramid() {
+		return this.pyramid;
+	}
+	
+	public final PipelineStage<?> getRenderStage() {
+		return this.renderStage;
+	}
+	
+	public final PipelineStage<?> getEncodeStage() {
+		return this.encodeStage;
+	}
+	
+	public final PipelineStage<?> getWriteStage() {
+		return this.writeStage;
+	}
+	
+	/**
+	 * Recovers the tiles completed by an interrupted run, level by level;
+	 * an upper tile is only kept if all its children are, and if its label mask is recovered too.
+	 * <br>Overlapping DeepZoom tiles are not recovered, because their neighbors would be needed to rebuild them.
+	 * 
+	 * @return the number of restored tiles
+	 */
+	public final int restore() {
+		final Set<String> recoverableEntries = this.output.getRecoverableEntries();
+		int result = 0;
+		
+		if (!recoverableEntries.isEmpty() && this.deepZoomTiler == null) {
+			// The shared payloads first, so that the references to them can be recovered
+			for (final String entryName : recoverableEntries) {
+				if (entryName.startsWith(this.imageName + SHARED_INFIX) && this.output.restore(entryName)) {
+					this.sharedEntries.add(entryName);
+				}
+			}
+			
+			for (int lod = 0; lod < this.completedTiles.length && 0 < this.pyramid.getLODWidth(lod) && 0 < this.pyramid.getLODHeight(lod); ++lod) {
+				for (int tileY = 0; tileY < this.pyramid.getLODHeight(lod); tileY += this.tileHeight) {
+					for (int tileX = 0; tileX < this.pyramid.getLODWidth(lod); tileX += this.tileWidth) {
+						final String tileEntryName = this.getEntryName(lod, tileX, tileY);
+						final String entryName = recoverableEntries.contains(tileEntryName) ? tileEntryName
+								: tileEntryName + InputSource.REFERENCE_SUFFIX;
+						
+						if (recoverableEntries.contains(entryName) && this.areChildrenCompleted(lod, tileX, tileY)
+								&& (this.labels == null || this.labels.restore(lod, tileX, tileY)) && this.output.restore(entryName)) {
+							this.completedTiles[lod].set(this.pyramid.getTileIndex(lod, tileX, tileY));
+							++result;
+						}
+					}
+				}
+			}
+		}
+		
+		this.output.endRestore();
+		
+		if (this.labels != null) {
+			this.labels.getOutput().endRestore();
+		}
+		
+		return result;
+	}
+	
+	public final boolean isCompleted(final int lod, final int tileX, final int tileY) {
+		return this.completedTiles[lod].get(this.pyramid.getTileIndex(lod, tileX, tileY));
+	}
+	
+	/**
+	 * Declares a tile that was written to the output by other means.
+	 */
+	public final void setCompleted(final int lod, final int tileX, final int tileY) {
+		this.completedTiles[lod].set(this.pyramid.getTileIndex(lod, tileX, tileY));
+	}
+	
+	/**
+	 * @return <code>true</code> if the base tile at (<code>tileX</code>, <code>tileY</code>) is rendered by this shard
+	 */
+	public final boolean isInShard(final int tileX, final int tileY) {
+		return this.pyramid.getTileIndex(0, tileX, tileY) % this.shardCount == this.shardIndex;
+	}
+	
+	/**
+	 * Submits all the tiles of all the levels with {@link #submit(int, int, int)}.
+	 */
+	public final void submitAll(final ConsoleMonitor monitor) {
+		for (int lod = 0; lod < this.completedTiles.length && 0 < this.pyramid.getLODWidth(lod) && 0 < this.pyramid.getLODHeight(lod); ++lod) {
+			for (int tileY = 0; tileY < this.pyramid.getLODHeight(lod); tileY += this.tileHeight) {
+				for (int tileX = 0; tileX < this.pyramid.getLODWidth(lod); tileX += this.tileWidth) {
+					monitor.ping(lod + " " + tileX + " " + tileY + " / " + this.width + " " + this.height + " " + this + " \r");
+					this.submit(lod, tileX, tileY);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Base tiles that are not completed are rendered if they belong to this shard; completed tiles
+	 * whose parent is not completed are read back to build it. Blocks while the render queue is full.
+	 */
+	public final void submit(final int lod, final int tileX, final int tileY) {
+		if (this.isCompleted(lod, tileX, tileY)) {
+			if (this.pyramid.hasParent(lod, tileX, tileY)
+					&& !this.isCompleted(lod + 1, quantize(tileX / 2, this.tileWidth), quantize(tileY / 2, this.tileHeight))) {
+				this.renderStage.submit(() -> this.resume(lod, tileX, tileY));
+			}
+		} else if (lod == 0 && this.isInShard(tileX, tileY)) {
+			this.renderer.beforeRender();
+			this.renderStage.submit(() -> this.render(tileX, tileY));
+		}
+	}
+	
+	/**
+	 * Waits until all the submitted tiles and their upper levels are written.
+	 * <br>Every stage is closed, even after a failure, which is rethrown once they are all stopped.
+	 */
+	@Override
+	public final void close() {
+		Throwable failure = null;
+		
+		for (final PipelineStage<?> stage : Arrays.<PipelineStage<?>>asList(this.renderStage, this.encodeStage, this.writeStage)) {
+			try {
+				stage.close();
+			} catch (final RuntimeException | Error exception) {
+				// A failure is rethrown by the stages that submit to the failed one
+				if (failure == null) {
+					failure = exception;
+				} else if (failure != exception) {
+					failure.addSuppressed(exception);
+				}
+			}
+		}
+		
+		if (failure != null) {
+			throw unchecked(failure);
+		}
+	}
+	
+	/**
+	 * @return the current queue sizes, for monitoring
+	 */
+	@Override
+	public final String toString() {
+		return this.renderStage + " " + this.encodeStage + " " + this.writeStage;
+	}
+	
+	/**
+	 * @return <code>{image}_svs{lod}_{x}_{y}.{format}</code>, or <code>{level}/{column}_{row}.{format}</code> in DeepZoom mode,
+	 * where level 0 is the 1x1 level
+	 */
+	private final String getEntryName(final int lod, final int tileX, final int tileY) {
+		if (this.deepZoom) {
+			return (this.completedTiles.length - 1 - lod) + "/" + tileX / this.tileWidth + "_" + tileY / this.tileHeight
+					+ "." + this.codec.getFormat();
+		}
+		
+		return tileName(this.imageName, lod, tileX, tileY, this.codec);
+	}
+	
+	private final boolean areChildrenCompleted(final int lod, final int tileX, final int tileY) {
+		if (lod == 0) {
+			return true;
+		}
+		
+		for (int childY = 2 * tileY; childY < min(this.pyramid.getLODHeight(lod - 1), 2 * (tileY + this.tileHeight)); childY += this.tileHeight) {
+			for (int childX = 2 * tileX; childX < min(this.pyramid.getLODWidth(lod - 1), 2 * (tileX + this.tileWidth)); childX += this.tileWidth) {
+				if (!this.isCompleted(lod - 1, childX, childY)) {
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	private final void resume(final int lod, final int tileX, final int tileY) {
+		try (final InputStream input = this.output.reopen(this.getEntryName(lod, tileX, tileY))) {
+			this.pyramid.add(lod, tileX, tileY, bgr(this.codec.read(input)));
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		if (this.labels != null) {
+			this.labels.resume(lod, tileX, tileY);
+		}
+	}
+	
+	private final void render(final int tileX, final int tileY) {
+		final int actualTileWidth = min(this.tileWidth, this.width - tileX);
+		final int actualTileHeight = min(this.tileHeight, this.height - tileY);
+		
+		if (this.isBackground(0, tileX, tileY)) {
+			final BufferedImage background = this.getBackground(0, tileX, tileY).getImage();
+			
+			this.output(background, 0, tileX, tileY);
+			this.pyramid.add(tileX, tileY, background);
+			
+			if (this.labels != null) {
+				this.labels.add(tileX, tileY, this.labels.newTile(actualTileWidth, actualTileHeight));
+			}
+			
+			return;
+		}
+		
+		final MemoryBudget budget = MemoryBudget.getInstance();
+		
+		// Released once the tile is encoded
+		budget.acquire(this.tileFootprint);
+		
+		TilePool.Tile tile = null;
+		
+		try {
+			tile = this.tiles.acquire(actualTileWidth, actualTileHeight);
+			
+			render(this.renderer, this.postProcessor, tile.getCanvas(), 0, this.originX + tileX, this.originY + tileY,
+					this.tileWidth, this.tileHeight, this.scale);
+			
+			final BufferedImage labelTile = this.labels == null ? null : this.labels.render(this.originX + tileX, this.originY + tileY,
+					actualTileWidth, actualTileHeight, this.tileWidth, this.tileHeight, this.scale);
+			
+			this.encodeStage.submit(new RenderedTile(tileX, tileY, tile, labelTile));
+		} catch (final RuntimeException | Error exception) {
+			if (tile != null) {
+				this.tiles.release(tile);
+			}
+			
+			budget.release(this.tileFootprint);
+			
+			throw exception;
+		}
+	}
+	
+	private final void encode(final RenderedTile tile) {
+		final BufferedImage image = tile.getTile().getImage();
+		
+		try {
+			this.output(image, 0, tile.getTileX(), tile.getTileY());
+			this.pyramid.add(tile.getTileX(), tile.getTileY(), image);
+			
+			if (tile.getLabelTile() != null) {
+				this.labels.add(tile.getTileX(), tile.getTileY(), tile.getLabelTile());
+			}
+		} finally {
+			this.discard(tile);
+		}
+	}
+	
+	/**
+	 * Gives back the pool tile and the memory reserved by <code>tile</code>.
+	 */
+	private final void discard(final RenderedTile tile) {
+		try {
+			this.tiles.release(tile.getTile());
+		} finally {
+			MemoryBudget.getInstance().release(this.tileFootprint);
+		}
+	}
+	
+	private final void output(final BufferedImage image, final int lod, final int tileX, final int tileY) {
+		if (this.deepZoomTiler != null) {
+			this.deepZoomTiler.add(lod, tileX, tileY, image);
+		} else if (this.isBackground(lod, tileX, tileY)) {
+			this.writeBackground(lod, tileX, tileY);
+		} else {
+			this.encode(image, lod, tileX, tileY);
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if no region touches the tile at (<code>tileX</code>, <code>tileY</code>) in level <code>lod</code>
+	 */
+	private final boolean isBackground(final int lod, final int tileX, final int tileY) {
+		if (this.backgroundVariantCount == 0) {
+			return false;
+		}
+		
+		final double lodScale = (1 << lod) / this.scale;
+		
+		return this.renderer.isBlank(new Rectangle2D.Double(
+				(this.originX + (tileX << lod)) / this.scale, (this.originY + (tileY << lod)) / this.scale,
+				min(this.tileWidth, this.pyramid.getLODWidth(lod) - tileX) * lodScale,
+				min(this.tileHeight, this.pyramid.getLODHeight(lod) - tileY) * lodScale));
+	}
+	
+	/**
+	 * A background tile whose parent is a background tile too gets the variant that its parent was reduced from,
+	 * so that the upper levels are the reductions of the tiles actually written below them;
+	 * the other background tiles draw their variant from the slide seed.
+	 */
+	private final int getBackgroundVariant(final int lod, final int tileX, final int tileY) {
+		final int parentX = tileX / (2 * this.tileWidth) * this.tileWidth;
+		final int parentY = tileY / (2 * this.tileHeight) * this.tileHeight;
+		
+		if (this.pyramid.hasParent(lod, tileX, tileY) && this.isBackground(lod + 1, parentX, parentY)) {
+			return childVariant(this.getBackgroundVariant(lod + 1, parentX, parentY),
+					2 * ((tileY / this.tileHeight) & 1) + ((tileX / this.tileWidth) & 1), this.backgroundVariantCount);
+		}
+		
+		return (int) Long.remainderUnsigned(Seeds.tileSeed(this.backgroundSeed, lod, tileX, tileY), this.backgroundVariantCount);
+	}
+	
+	/**
+	 * In level 0, the variant <code>v</code> is a blank tile post-processed as if it were at (<code>-1 - v</code>, <code>-1</code>),
+	 * which no actual tile uses; in the upper levels, it is reduced from the children of the tile,
+	 * whose variants are given by {@link #childVariant(int, int, int)}.
+	 * <br>The backgrounds are shared by the tiles of a level whose children have the same dimensions.
+	 */
+	private final BackgroundTile getBackground(final int lod, final int tileX, final int tileY) {
+		final int width = min(this.tileWidth, this.pyramid.getLODWidth(lod) - tileX);
+		final int height = min(this.tileHeight, this.pyramid.getLODHeight(lod) - tileY);
+		final int childrenRight = lod == 0 ? 0 : min(this.pyramid.getLODWidth(lod - 1), 2 * (tileX + this.tileWidth));
+		final int childrenBottom = lod == 0 ? 0 : min(this.pyramid.getLODHeight(lod - 1), 2 * (tileY + this.tileHeight));
+		final int variant = this.getBackgroundVariant(lod, tileX, tileY);
+		final String key = lod + " " + width + " " + height + " " + (childrenRight - 2 * tileX) + " " + (childrenBottom - 2 * tileY) + " " + variant;
+		final BackgroundTile result = this.backgrounds.get(key);
+		
+		if (result != null) {
+			return result;
+		}
+		
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		
+		if (lod == 0) {
+			final Graphics2D g = image.createGraphics();
+			
+			g.setColor(BACKGROUND);
+			g.fillRect(0, 0, width, height);
+			g.dispose();
+			
+			this.postProcessor.process(image, -1 - variant, -1);
+		} else {
+			for (int childY = 2 * tileY; childY < childrenBottom; childY += this.tileHeight) {
+				for (int childX = 2 * tileX; childX < childrenRight; childX += this.tileWidth) {
+					PyramidBuilder.reduce(this.getBackground(lod - 1, childX, childY).getImage(),
+							image, childX / 2 - tileX, childY / 2 - tileY);
+				}
+			}
+		}
+		
+		final Buffer buffer = this.encode(image, lod);
+		final byte[] data = Arrays.copyOf(buffer.getData(), buffer.size());
+		final String entryName = this.imageName + SHARED_INFIX + hex(sha1(data)) + "." + this.codec.getFormat();
+		
+		// Concurrent computations give the same tile
+		this.backgrounds.putIfAbsent(key, new BackgroundTile(image, entryName, data));
+		
+		return this.backgrounds.get(key);
+	}
+	
+	private final void writeBackground(final int lod, final int tileX, final int tileY) {
+		final BackgroundTile background = this.getBackground(lod, tileX, tileY);
+		final String entryName = this.getEntryName(lod, tileX, tileY);
+		final byte[] data = background.getData();
+		
+		if (this.referencing) {
+			if (this.sharedEntries.add(background.getEntryName())) {
+				this.writeStage.submit(new EncodedTile(background.getEntryName(), data, data.length));
+			}
+			
+			this.writeStage.submit(new EncodedTile(entryName, background.getEntryName()));
+		} else {
+			this.writeStage.submit(new EncodedTile(entryName, data, data.length));
+		}
+	}
+	
+	private final Buffer encode(final BufferedImage image, final int lod) {
+		final Buffer result = new Buffer();
+		
+		try {
+			if (this.paddingTiles && (image.getWidth() < this.tileWidth || image.getHeight() < this.tileHeight)) {
+				final BufferedImage paddedImage = new BufferedImage(this.tileWidth, this.tileHeight, BufferedImage.TYPE_3BYTE_BGR);
+				final Graphics2D g = paddedImage.createGraphics();
+				
+				g.setColor(BACKGROUND);
+				g.fillRect(0, 0, this.tileWidth, this.tileHeight);
+				g.drawImage(image, 0, 0, null);
+				g.dispose();
+				
+				this.codec.write(paddedImage, lod, result);
+			} else {
+				this.codec.write(image, lod, result);
+			}
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		return result;
+	}
+	
+	private final void encode(final BufferedImage image, final int lod, final int tileX, final int tileY) {
+		final GenerationEvents.TileEncoding event = new GenerationEvents.TileEncoding();
+		
+		event.begin();
+		
+		final Buffer buffer = this.encode(image, lod);
+		
+		if (event.shouldCommit()) {
+			event.lod = lod;
+			event.tileX = tileX;
+			event.tileY = tileY;
+			event.format = this.codec.getFormat();
+			event.size = buffer.size();
+			event.commit();
+		}
+		
+		this.writeStage.submit(new EncodedTile(this.getEntryName(lod, tileX, tileY), buffer.getData(), buffer.size()));
+	}
+	
+	private final void write(final EncodedTile tile) {
+		final GenerationEvents.TileWriting event = new GenerationEvents.TileWriting();
+		
+		event.begin();
+		
+		if (tile.getTarget() != null) {
+			this.output.reference(tile.getEntryName(), tile.getTarget());
+		} else {
+			this.output.write(tile.getEntryName(), tile.getData(), tile.getLength());
+		}
+		
+		if (event.shouldCommit()) {
+			event.entryName = tile.getEntryName();
+			event.size = tile.getLength();
+			event.commit();
+		}
+	}
+	
+	static final Color BACKGROUND = new Color(0xFFF3F3F3);
+	
+	/**
+	 * Shared payloads are named <code>{image}_shared_{SHA-1 of the payload}.{format}</code>.
+	 */
+	static final String SHARED_INFIX = "_shared_";
+	
+	static final byte[] sha1(final byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(data);
+		} catch (final NoSuchAlgorithmException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * @return the variant of the child in <code>quadrant</code> (0 to 3, row-major) of a background tile of variant <code>variant</code>
+	 */
+	static final int childVariant(final int variant, final int quadrant, final int variantCount) {
+		return (4 * variant + quadrant) % variantCount;
+	}
+	
+	static final String hex(final byte[] data) {
+		final StringBuilder result = new StringBuilder(2 * data.length);
+		
+		for (final byte b : data) {
+			result.append(String.format("%02x", b & 0xFF));
+		}
+		
+		return result.toString();
+	}
+	
+	/**
+	 * Renders and post-processes the tile at (<code>tileX</code>, <code>tileY</code>) of level <code>lod</code> into <code>buffer</code>,
+	 * in a level where a model unit is <code>scale</code> pixels wide.
+	 */
+	public static final void render(final ModelRenderer renderer, final TilePostProcessor postProcessor, final Canvas buffer,
+			final int lod, final int tileX, final int tileY, final int tileWidth, final int tileHeight, final double scale) {
+		final Graphics2D g = buffer.getGraphics();
+		final AffineTransform savedTransform = g.getTransform();
+		
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
+		g.translate(-tileX, -tileY);
+		g.scale(scale, scale);
+		
+		renderer.renderTo(buffer, tileX, tileY, tileWidth, tileHeight);
+		postProcessor.process(buffer.getImage(), lod, tileX, tileY);
+		
+		g.setTransform(savedTransform);
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	public static final class Settings implements Serializable {
+		
+		private int renderThreadCount = max(1, (int) (Runtime.getRuntime().availableProcessors() * MAXIMUM_CPU_LOAD));
+		
+		private int encodeThreadCount = max(1, Runtime.getRuntime().availableProcessors() / 4);
+		
+		private int writeThreadCount = 1;
+		
+		private int queueCapacity = 2 * this.renderThreadCount;
+		
+		private int shardIndex = 0;
+		
+		private int shardCount = 1;
+		
+		private Rectangle regionOfInterest;
+		
+		private int lod;
+		
+		private boolean paddingTiles;
+		
+		private boolean deepZoom;
+		
+		private int overlap;
+		
+		private int backgroundVariantCount = 8;
+		
+		private long seed = 1L;
+		
+		private boolean labelMasks;
+		
+		public final int getRenderThreadCount() {
+			return this.renderThreadCount;
+		}
+		
+		public final Settings setRenderThreadCount(final int renderThreadCount) {
+			this.renderThreadCount = renderThreadCount;
+			
+			return this;
+		}
+		
+		public final int getEncodeThreadCount() {
+			return this.encodeThreadCount;
+		}
+		
+		public final Settings setEncodeThreadCount(final int encodeThreadCount) {
+			this.encodeThreadCount = encodeThreadCount;
+			
+			return this;
+		}
+		
+		public final int getWriteThreadCount() {
+			return this.writeThreadCount;
+		}
+		
+		public final Settings setWriteThreadCount(final int writeThreadCount) {
+			this.writeThreadCount = writeThreadCount;
+			
+			return this;
+		}
+		
+		/**
+		 * @return the capacity of each stage queue
+		 */
+		public final int getQueueCapacity() {
+			return this.queueCapacity;
+		}
+		
+		public final Settings setQueueCapacity(final int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			
+			return this;
+		}
+		
+		public final int getShardIndex() {
+			return this.shardIndex;
+		}
+		
+		public final int getShardCount() {
+			return this.shardCount;
+		}
+		
+		/**
+		 * @return the rendered area in base level pixels, or <code>null</code> for the whole model
+		 */
+		public final Rectangle getRegionOfInterest() {
+			return this.regionOfInterest;
+		}
+		
+		/**
+		 * @return the level of detail at which the tiles are rendered
+		 */
+		public final int getLOD() {
+			return this.lod;
+		}
+		
+		/**
+		 * @param regionOfInterest
+		 * <br>In base level pixels, <code>null</code> for the whole model
+		 */
+		public final Settings setRegionOfInterest(final Rectangle regionOfInterest, final int lod) {
+			this.regionOfInterest = regionOfInterest;
+			this.lod = lod;
+			
+			return this;
+		}
+		
+		public final boolean isPaddingTiles() {
+			return this.paddingTiles;
+		}
+		
+		/**
+		 * @param paddingTiles
+		 * <br>If <code>true</code>, the edge tiles are encoded at full tile size, as required by TIFF
+		 */
+		public final Settings setPaddingTiles(final boolean paddingTiles) {
+			this.paddingTiles = paddingTiles;
+			
+			return this;
+		}
+		
+		public final boolean isDeepZoom() {
+			return this.deepZoom;
+		}
+		
+		/**
+		 * @return the number of pixels shared by adjacent DeepZoom tiles on each side
+		 */
+		public final int getOverlap() {
+			return this.overlap;
+		}
+		
+		/**
+		 * Selects the DeepZoom layout: level dimensions are rounded up, entries are named
+		 * <code>{level}/{column}_{row}.{format}</code> and tiles are extended by <code>overlap</code> pixels on each inner side.
+		 */
+		public final Settings setDeepZoom(final int overlap) {
+			this.deepZoom = true;
+			this.overlap = overlap;
+			
+			return this;
+		}
+		
+		/**
+		 * @return the number of precomputed tiles given to the tiles that no region touches
+		 */
+		public final int getBackgroundVariantCount() {
+			return this.backgroundVariantCount;
+		}
+		
+		/**
+		 * @param backgroundVariantCount
+		 * <br><code>0</code> to render and encode every tile
+		 */
+		public final Settings setBackgroundVariantCount(final int backgroundVariantCount) {
+			this.backgroundVariantCount = backgroundVariantCount;
+			
+			return this;
+		}
+		
+		/**
+		 * @return the slide seed, see {@link Seeds}, which chooses the background variants
+		 */
+		public final long getSeed() {
+			return this.seed;
+		}
+		
+		public final Settings setSeed(final long seed) {
+			this.seed = seed;
+			
+			return this;
+		}
+		
+		public final boolean isLabelMasks() {
+			return this.labelMasks;
+		}
+		
+		/**
+		 * @param labelMasks
+		 * <br>If <code>true</code>, a pyramid of label masks is written alongside the image, see {@link LabelMasks}
+		 */
+		public final Settings setLabelMasks(final boolean labelMasks) {
+			this.labelMasks = labelMasks;
+			
+			return this;
+		}
+		
+		/**
+		 * Only the base tiles whose row-major index is <code>shardIndex</code> modulo <code>shardCount</code> are rendered.
+		 */
+		public final Settings setShard(final int shardIndex, final int shardCount) {
+			if (shardIndex < 0 || shardCount <= shardIndex) {
+				throw new IllegalArgumentException("Invalid shard: " + shardIndex + "/" + shardCount);
+			}
+			
+			this.shardIndex = shardIndex;
+			this.shardCount = shardCount;
+			
+			return this;
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		private static final long serialVersionUID = 4417829390218617426L;
+		
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class RenderedTile {
+		
+		private final int tileX;
+		
+		private final int tileY;
+		
+		private final TilePool.Tile tile;
+		
+		private final BufferedImage labelTile;
+		
+		RenderedTile(final int tileX, final int tileY, final TilePool.Tile tile, final BufferedImage labelTile) {
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.tile = tile;
+			this.labelTile = labelTile;
+		}
+		
+		final int getTileX() {
+			return this.tileX;
+		}
+		
+		final int getTileY() {
+			return this.tileY;
+		}
+		
+		final TilePool.Tile getTile() {
+			return this.tile;
+		}
+		
+		/**
+		 * @return the label mask of the tile, or <code>null</code>
+		 */
+		final BufferedImage getLabelTile() {
+			return this.labelTile;
+		}
+		
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class EncodedTile {
+		
+		private final String entryName;
+		
+		private final byte[] data;
+		
+		private final int length;
+		
+		private final String target;
+		
+		EncodedTile(final String entryName, final byte[] data, final int length) {
+			this.entryName = entryName;
+			this.data = data;
+			this.length = length;
+			this.target = null;
+		}
+		
+		/**
+		 * A reference from <code>entryName</code> to <code>target</code>.
+		 */
+		EncodedTile(final String entryName, final String target) {
+			this.entryName = entryName;
+			this.data = null;
+			this.length = 0;
+			this.target = target;
+		}
+		
+		final String getEntryName() {
+			return this.entryName;
+		}
+		
+		final byte[] getData() {
+			return this.data;
+		}
+		
+		final int getLength() {
+			return this.length;
+		}
+		
+		final String getTarget() {
+			return this.target;
+		}
+		
+	}
+	
+	/**
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class BackgroundTile {
+		
+		private final BufferedImage image;
+		
+		private final String entryName;
+		
+		private final byte[] data;
+		
+		BackgroundTile(final BufferedImage image, final String entryName, final byte[] data) {
+			this.image = image;
+			this.entryName = entryName;
+			this.data = data;
+		}
+		
+		/**
+		 * @return the tile, which must not be modified
+		 */
+		final BufferedImage getImage() {
+			return this.image;
+		}
+		
+		/**
+		 * @return the name of the shared entry holding {@link #getData()}
+		 */
+		final String getEntryName() {
+			return this.entryName;
+		}
+		
+		final byte[] getData() {
+			return this.data;
+		}
+		
+	}
+	
+	/**
+	 * Gives access to its internal array to avoid a copy.
+	 * 
+	 * @author ga (creation 2026-10-17)
+	 */
+	static final class Buffer extends ByteArrayOutputStream {
+		
+		Buffer() {
+			super(1 << 16);
+		}
+		
+		final byte[] getData() {
+			return this.buf;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,45 @@
+package fr.unistra.wsi.synthetic;
+
+import java.awt.image.BufferedImage;
+import java.io.Serializable;
+
+/**
+ * @author ga (creation 2026-10-17)
+ */
+public abstract interface TilePostProcessor extends Serializable {
+	
+	/**
+	 * Processes a tile of the base level.
+	 * 
+	 * @param tile
+	 * <br>A <code>TYPE_3BYTE_BGR</code> image
+	 */
+	public default void process(final BufferedImage tile, final int tileX, final int tileY) {
+		this.process(tile, 0, tileX, tileY);
+	}
+	
+	/**
+	 * Modifies <code>tile</code> in place; can be called concurrently on different tiles.
+	 * <br>The result must only depend on the tile content and on (<code>lod</code>, <code>tileX</code>, <code>tileY</code>),
+	 * so that the levels rendered directly at their own scale get independent noise.
+	 * 
+	 * @param tile
+	 * <br>A <code>TYPE_3BYTE_BGR</code> image
+	 */
+	public abstract void process(BufferedImage tile, int lod, int tileX, int tileY);
+	
+	public static final TilePostProcessor NONE = new TilePostProcessor() {
+		
+		@Override
+		public final void process(final BufferedImage tile, final int lod, final int tileX, final int tileY) {
+			// NOP
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		private static final long serialVersionUID = 7021508431566563104L;
+		
+	};
+	
+}
@@ -0,0 +1,94 @@
+package imj2.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import multij.tools.IllegalInstantiationException;
+
+/**
+ * Java Flight Recorder events of the core image classes.
+ * <br>They cost almost nothing when no recording is running, so their fields are only set if <code>shouldCommit()</code>.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class CoreEvents {
+	
+	private CoreEvents() {
+		throw new IllegalInstantiationException();
+	}
+	
+	public static final String CATEGORY = "IMJ";
+	
+	/**
+	 * Computation of a value missing from {@link IMJCoreTools#cache(Object, java.util.concurrent.Callable, boolean)}.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	@Name("imj2.core.CacheMiss")
+	@Label("Cache Miss")
+	@Category({ CATEGORY, "Cache" })
+	public static final class CacheMiss extends Event {
+		
+		@Label("Key")
+		public String key;
+		
+	}
+	
+	/**
+	 * Run of {@link IMJCoreTools#removeOldCacheEntries(double)}.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	@Name("imj2.core.CacheEviction")
+	@Label("Cache Eviction")
+	@Category({ CATEGORY, "Cache" })
+	public static final class CacheEviction extends Event {
+		
+		@Label("Ratio")
+		@Description("Requested ratio of entries to remove")
+		public double ratio;
+		
+		@Label("Removed Entries")
+		public int removedCount;
+		
+		@Label("Remaining Entries")
+		public int remainingCount;
+		
+		@Label("Used Heap")
+		@DataAmount
+		public long usedMemory;
+		
+	}
+	
+	/**
+	 * Computation of a tile of a {@link FilteredTiledImage2D}, including the cache lookup.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	@Name("imj2.core.FilteredTileUpdate")
+	@Label("Filtered Tile Update")
+	@Category({ CATEGORY, "Image" })
+	public static final class FilteredTileUpdate extends Event {
+		
+		@Label("Image")
+		public String imageId;
+		
+		@Label("Tile X")
+		public int tileX;
+		
+		@Label("Tile Y")
+		public int tileY;
+		
+		@Label("Tile Width")
+		public int tileWidth;
+		
+		@Label("Tile Height")
+		public int tileHeight;
+		
+	}
+	
+}
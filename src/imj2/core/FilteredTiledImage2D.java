@@ -64,11 +64,24 @@ public abstract class FilteredTiledImage2D extends TiledImage2D {
 			
 		};
 		
+		final CoreEvents.FilteredTileUpdate event = new CoreEvents.FilteredTileUpdate();
+		
+		event.begin();
+		
 		// XXX Use while loop ?
 		this.tile = cache(key, valueFactory,
 				cache(key, valueFactory).getTimestamp() != this.getTimestamp().get()).getValue();
 		this.setTileTimestamp(this.getTimestamp().get());
 		
+		if (event.shouldCommit()) {
+			event.imageId = this.getId();
+			event.tileX = tileX;
+			event.tileY = tileY;
+			event.tileWidth = tileWidth;
+			event.tileHeight = tileHeight;
+			event.commit();
+		}
+		
 		return this.tile;
 	}
 	
@@ -34,6 +34,12 @@ public abstract class IMJCoreTools {
 	
 	private static final Set<Object> lockedCacheKeys = new HashSet<Object>();
 	
+	private static final AtomicLong cacheHitCount = new AtomicLong();
+	
+	private static final AtomicLong cacheMissCount = new AtomicLong();
+	
+	private static volatile long cacheMemoryLimit = Runtime.getRuntime().maxMemory() / 2L;
+	
 	static {
 		CacheCleaner.setup();
 	}
@@ -50,6 +56,45 @@ public abstract class IMJCoreTools {
 		}
 	}
 	
+	public static final long getCacheHitCount() {
+		return cacheHitCount.get();
+	}
+	
+	/**
+	 * @return the number of values computed by {@link #cache(Object, Callable, boolean)}
+	 */
+	public static final long getCacheMissCount() {
+		return cacheMissCount.get();
+	}
+	
+	public static final long getCacheMemoryLimit() {
+		return cacheMemoryLimit;
+	}
+	
+	/**
+	 * @param cacheMemoryLimit
+	 * <br>Used heap above which the oldest entries are removed after garbage collections and by {@link #trimCache()};
+	 * half of the maximum heap by default
+	 */
+	public static final void setCacheMemoryLimit(final long cacheMemoryLimit) {
+		IMJCoreTools.cacheMemoryLimit = cacheMemoryLimit;
+	}
+	
+	/**
+	 * Removes the oldest eighth of the entries if the used heap exceeds {@link #getCacheMemoryLimit()}.
+	 * 
+	 * @return <code>true</code> if entries were removed
+	 */
+	public static final boolean trimCache() {
+		if (Tools.usedMemory() <= cacheMemoryLimit) {
+			return false;
+		}
+		
+		removeOldCacheEntries(1.0 / 8.0);
+		
+		return true;
+	}
+	
 	public static final <V> V cache(final Object key, final Callable<V> valueFactory) {
 		return cache(key, valueFactory, false);
 	}
@@ -61,7 +106,7 @@ public abstract class IMJCoreTools {
 			cachedValue = cache.get(key);
 			
 			if (cachedValue == null) {
-				cachedValue = new CachedValue(valueFactory);
+				cachedValue = new CachedValue(key, valueFactory);
 				cache.put(key, cachedValue);
 			}
 		}
@@ -83,15 +128,28 @@ public abstract class IMJCoreTools {
 			});
 			
 			final int n = (int) (ratio * entries.size());
+			final CoreEvents.CacheEviction event = new CoreEvents.CacheEviction();
+			int removedCount = 0;
+			
+			event.begin();
 			
 			for (int i = 0; i < n; ++i) {
 				final Entry<Object, CachedValue> entry = entries.get(i);
 				
 				if (!entry.getValue().isBusy() && !lockedCacheKeys.contains(entry.getKey())) {
 					cache.remove(entry.getKey());
+					++removedCount;
 				}
 			}
 			
+			if (event.shouldCommit()) {
+				event.ratio = ratio;
+				event.removedCount = removedCount;
+				event.remainingCount = cache.size();
+				event.usedMemory = Tools.usedMemory();
+				event.commit();
+			}
+			
 			if (ratio == 1.0) {
 				Tools.debugPrint("Cache purged, remaining locked items:", cache.size());
 			}
@@ -132,14 +190,17 @@ public abstract class IMJCoreTools {
 		
 		private long lastAccess;
 		
+		private final Object key;
+		
 		private final Callable<?> valueFactory;
 		
 		private Object value;
 		
 		private final AtomicBoolean busy;
 		
-		CachedValue(final Callable<?> valueFActory) {
+		CachedValue(final Object key, final Callable<?> valueFActory) {
 			this.lastAccess = timestamp.addAndGet(1L);
+			this.key = key;
 			this.valueFactory = valueFActory;
 			this.busy = new AtomicBoolean();
 		}
@@ -155,6 +216,11 @@ public abstract class IMJCoreTools {
 		@SuppressWarnings("unchecked")
 		final synchronized <T> T getValue(final boolean refresh) {
 			if (this.value == null || refresh) {
+				final CoreEvents.CacheMiss event = new CoreEvents.CacheMiss();
+				
+				cacheMissCount.incrementAndGet();
+				event.begin();
+				
 				try {
 					this.busy.set(true);
 					this.value = this.valueFactory.call();
@@ -163,6 +229,13 @@ public abstract class IMJCoreTools {
 				} finally {
 					this.busy.set(false);
 				}
+				
+				if (event.shouldCommit()) {
+					event.key = String.valueOf(this.key);
+					event.commit();
+				}
+			} else {
+				cacheHitCount.incrementAndGet();
 			}
 			
 			this.lastAccess = timestamp.addAndGet(1L);
@@ -185,11 +258,7 @@ public abstract class IMJCoreTools {
 		
 		@Override
 		protected final void finalize() throws Throwable {
-			final Runtime runtime = Runtime.getRuntime();
-			
-			if (Tools.usedMemory() > runtime.maxMemory() / 2L) {
-				removeOldCacheEntries(1.0 / 8.0);
-			}
+			trimCache();
 			
 			super.finalize();
 			
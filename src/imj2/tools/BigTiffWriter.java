@@ -0,0 +1,388 @@
+package imj2.tools;
+
+import static multij.tools.Tools.unchecked;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a tiled pyramidal BigTIFF with one JPEG-compressed IFD per level of detail.
+ * <br>Tiles are appended in any order as they come; the IFDs and tile offsets are written when the writer is closed,
+ * so the file is never read back.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class BigTiffWriter implements Closeable {
+	
+	private final File file;
+	
+	private final OutputStream output;
+	
+	private final Map<Integer, int[]> levels;
+	
+	private final Map<Integer, Map<Long, long[]>> tiles;
+	
+	private String description;
+	
+	private double micronsPerPixel;
+	
+	private int yCbCrSubsampling;
+	
+	private long position;
+	
+	private boolean closed;
+	
+	public BigTiffWriter(final File file) {
+		this.file = file;
+		this.levels = new TreeMap<>();
+		this.tiles = new HashMap<>();
+		
+		try {
+			this.output = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+			
+			final ByteBuffer header = newBuffer(HEADER_SIZE);
+			
+			header.put((byte) 'I').put((byte) 'I').putShort((short) 43).putShort((short) 8).putShort((short) 0);
+			// The offset of the first IFD is only known when closing
+			header.putLong(0L);
+			
+			this.write(header);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	public final File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * Declares the geometry of level <code>lod</code>; can be called before or after its tiles are written.
+	 */
+	public final synchronized BigTiffWriter setLevel(final int lod, final int width, final int height,
+			final int tileWidth, final int tileHeight) {
+		this.levels.put(lod, new int[] { width, height, tileWidth, tileHeight });
+		
+		return this;
+	}
+	
+	/**
+	 * @param description
+	 * <br>Stored in the ImageDescription tag of the first IFD
+	 */
+	public final synchronized BigTiffWriter setDescription(final String description) {
+		this.description = description;
+		
+		return this;
+	}
+	
+	public final synchronized BigTiffWriter setMicronsPerPixel(final double micronsPerPixel) {
+		this.micronsPerPixel = micronsPerPixel;
+		
+		return this;
+	}
+	
+	/**
+	 * Appends a JPEG tile; can be called concurrently.
+	 * <br>All the tiles must have the tile dimensions of their level, including the edge tiles,
+	 * and the same chroma subsampling.
+	 * 
+	 * @param tileX
+	 * <br>In pixels of level <code>lod</code>
+	 * @param tileY
+	 * <br>In pixels of level <code>lod</code>
+	 */
+	public final synchronized void writeTile(final int lod, final int tileX, final int tileY, final byte[] data, final int length) {
+		try {
+			if (this.yCbCrSubsampling == 0) {
+				this.yCbCrSubsampling = getLumaSampling(data, length);
+			}
+			
+			this.tiles.computeIfAbsent(lod, l -> new HashMap<>()).put(key(tileX, tileY), new long[] { this.position, length });
+			this.output.write(data, 0, length);
+			this.position += length;
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * Writes the IFDs after the tile data, then the offset of the first IFD in the header.
+	 * <br>Missing tiles get a null offset and size.
+	 */
+	@Override
+	public final synchronized void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		
+		this.closed = true;
+		
+		final List<long[]> tileOffsets = new ArrayList<>();
+		final List<long[]> tileByteCounts = new ArrayList<>();
+		final List<Long> tileOffsetsOffsets = new ArrayList<>();
+		final List<Long> tileByteCountsOffsets = new ArrayList<>();
+		long descriptionOffset = 0L;
+		final byte[] description = this.description == null ? null : (this.description + "\0").getBytes(StandardCharsets.UTF_8);
+		final int yCbCrSubsampling = this.yCbCrSubsampling == 0 ? 1 : this.yCbCrSubsampling;
+		
+		try {
+			// Out-of-line values first, so that the IFDs are contiguous and their offsets are known in advance
+			if (description != null && 8 < description.length) {
+				descriptionOffset = this.position;
+				this.output.write(description);
+				this.position += description.length;
+			}
+			
+			for (final Map.Entry<Integer, int[]> level : this.levels.entrySet()) {
+				final int[] geometry = level.getValue();
+				final int columnCount = (geometry[0] + geometry[2] - 1) / geometry[2];
+				final int rowCount = (geometry[1] + geometry[3] - 1) / geometry[3];
+				final long[] offsets = new long[columnCount * rowCount];
+				final long[] byteCounts = new long[offsets.length];
+				final Map<Long, long[]> levelTiles = this.tiles.getOrDefault(level.getKey(), new HashMap<>());
+				
+				for (int row = 0, i = 0; row < rowCount; ++row) {
+					for (int column = 0; column < columnCount; ++column, ++i) {
+						final long[] location = levelTiles.get(key(column * geometry[2], row * geometry[3]));
+						
+						if (location != null) {
+							offsets[i] = location[0];
+							byteCounts[i] = location[1];
+						}
+					}
+				}
+				
+				tileOffsets.add(offsets);
+				tileByteCounts.add(byteCounts);
+				tileOffsetsOffsets.add(this.writeLongs(offsets));
+				tileByteCountsOffsets.add(this.writeLongs(byteCounts));
+			}
+			
+			this.align();
+			
+			final long firstIFDOffset = this.position;
+			int i = 0;
+			
+			for (final Map.Entry<Integer, int[]> level : this.levels.entrySet()) {
+				final int[] geometry = level.getValue();
+				final boolean first = i == 0;
+				final int entryCount = (first && description != null ? 1 : 0) + (0.0 < this.micronsPerPixel ? 3 : 0) + 13;
+				final ByteBuffer ifd = newBuffer(ifdSize(entryCount));
+				
+				ifd.putLong(entryCount);
+				putEntry(ifd, TAG_NEW_SUBFILE_TYPE, TYPE_LONG, 1L, first ? 0L : 1L);
+				putEntry(ifd, TAG_IMAGE_WIDTH, TYPE_LONG, 1L, geometry[0]);
+				putEntry(ifd, TAG_IMAGE_LENGTH, TYPE_LONG, 1L, geometry[1]);
+				putEntry(ifd, TAG_BITS_PER_SAMPLE, TYPE_SHORT, 3L, 8L | 8L << 16 | 8L << 32);
+				putEntry(ifd, TAG_COMPRESSION, TYPE_SHORT, 1L, COMPRESSION_JPEG);
+				putEntry(ifd, TAG_PHOTOMETRIC_INTERPRETATION, TYPE_SHORT, 1L, PHOTOMETRIC_YCBCR);
+				
+				if (first && description != null) {
+					putEntry(ifd, TAG_IMAGE_DESCRIPTION, TYPE_ASCII, description.length,
+							8 < description.length ? descriptionOffset : inline(description));
+				}
+				
+				putEntry(ifd, TAG_SAMPLES_PER_PIXEL, TYPE_SHORT, 1L, 3L);
+				
+				if (0.0 < this.micronsPerPixel) {
+					// Pixels per centimeter, as a rational with denominator 1000
+					final long resolution = (Math.round(1E7 / (this.micronsPerPixel * (1 << level.getKey()))) & 0xFFFFFFFFL) | 1000L << 32;
+					
+					putEntry(ifd, TAG_X_RESOLUTION, TYPE_RATIONAL, 1L, resolution);
+					putEntry(ifd, TAG_Y_RESOLUTION, TYPE_RATIONAL, 1L, resolution);
+				}
+				
+				putEntry(ifd, TAG_PLANAR_CONFIGURATION, TYPE_SHORT, 1L, 1L);
+				
+				if (0.0 < this.micronsPerPixel) {
+					putEntry(ifd, TAG_RESOLUTION_UNIT, TYPE_SHORT, 1L, RESOLUTION_UNIT_CENTIMETER);
+				}
+				
+				putEntry(ifd, TAG_TILE_WIDTH, TYPE_LONG, 1L, geometry[2]);
+				putEntry(ifd, TAG_TILE_LENGTH, TYPE_LONG, 1L, geometry[3]);
+				putEntry(ifd, TAG_TILE_OFFSETS, TYPE_LONG8, tileOffsets.get(i).length,
+						tileOffsets.get(i).length == 1 ? tileOffsets.get(i)[0] : tileOffsetsOffsets.get(i));
+				putEntry(ifd, TAG_TILE_BYTE_COUNTS, TYPE_LONG8, tileByteCounts.get(i).length,
+						tileByteCounts.get(i).length == 1 ? tileByteCounts.get(i)[0] : tileByteCountsOffsets.get(i));
+				putEntry(ifd, TAG_YCBCR_SUBSAMPLING, TYPE_SHORT, 2L, yCbCrSubsampling | (long) yCbCrSubsampling << 16);
+				
+				ifd.putLong(i + 1 < this.levels.size() ? align(this.position + ifd.capacity()) : 0L);
+				
+				this.write(ifd);
+				this.align();
+				++i;
+			}
+			
+			this.output.close();
+			
+			try (final RandomAccessFile header = new RandomAccessFile(this.file, "rw")) {
+				final ByteBuffer buffer = newBuffer(8);
+				
+				buffer.putLong(this.levels.isEmpty() ? 0L : firstIFDOffset);
+				header.seek(HEADER_SIZE - 8L);
+				header.write(buffer.array());
+			}
+		} finally {
+			this.output.close();
+		}
+	}
+	
+	private final long writeLongs(final long[] values) throws IOException {
+		if (1 < values.length) {
+			this.align();
+		}
+		
+		final long result = this.position;
+		
+		if (1 < values.length) {
+			final ByteBuffer buffer = newBuffer(8 * values.length);
+			
+			for (final long value : values) {
+				buffer.putLong(value);
+			}
+			
+			this.write(buffer);
+		}
+		
+		return result;
+	}
+	
+	private final void write(final ByteBuffer buffer) throws IOException {
+		this.output.write(buffer.array(), 0, buffer.position());
+		this.position += buffer.position();
+	}
+	
+	/**
+	 * Pads the output to a multiple of 8 bytes, as BigTIFF readers expect for the IFDs and the <code>LONG8</code> arrays.
+	 */
+	private final void align() throws IOException {
+		final int padding = (int) (align(this.position) - this.position);
+		
+		this.output.write(new byte[padding]);
+		this.position += padding;
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int HEADER_SIZE = 16;
+	
+	static final int TYPE_ASCII = 2;
+	
+	static final int TYPE_SHORT = 3;
+	
+	static final int TYPE_LONG = 4;
+	
+	static final int TYPE_RATIONAL = 5;
+	
+	static final int TYPE_LONG8 = 16;
+	
+	static final int TAG_NEW_SUBFILE_TYPE = 254;
+	
+	static final int TAG_IMAGE_WIDTH = 256;
+	
+	static final int TAG_IMAGE_LENGTH = 257;
+	
+	static final int TAG_BITS_PER_SAMPLE = 258;
+	
+	static final int TAG_COMPRESSION = 259;
+	
+	static final int TAG_PHOTOMETRIC_INTERPRETATION = 262;
+	
+	static final int TAG_IMAGE_DESCRIPTION = 270;
+	
+	static final int TAG_SAMPLES_PER_PIXEL = 277;
+	
+	static final int TAG_X_RESOLUTION = 282;
+	
+	static final int TAG_Y_RESOLUTION = 283;
+	
+	static final int TAG_PLANAR_CONFIGURATION = 284;
+	
+	static final int TAG_RESOLUTION_UNIT = 296;
+	
+	static final int TAG_TILE_WIDTH = 322;
+	
+	static final int TAG_TILE_LENGTH = 323;
+	
+	static final int TAG_TILE_OFFSETS = 324;
+	
+	static final int TAG_TILE_BYTE_COUNTS = 325;
+	
+	static final int TAG_YCBCR_SUBSAMPLING = 530;
+	
+	static final long COMPRESSION_JPEG = 7L;
+	
+	static final long PHOTOMETRIC_YCBCR = 6L;
+	
+	static final long RESOLUTION_UNIT_CENTIMETER = 3L;
+	
+	static final ByteBuffer newBuffer(final int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	static final int ifdSize(final int entryCount) {
+		return 8 + 20 * entryCount + 8;
+	}
+	
+	/**
+	 * Entries must be put in increasing tag order; values of at most 8 bytes are stored inline,
+	 * packed from the lowest byte.
+	 */
+	static final void putEntry(final ByteBuffer ifd, final int tag, final int type, final long count, final long value) {
+		ifd.putShort((short) tag).putShort((short) type).putLong(count).putLong(value);
+	}
+	
+	static final long inline(final byte[] bytes) {
+		long result = 0L;
+		
+		for (int i = bytes.length - 1; 0 <= i; --i) {
+			result = result << 8 | (bytes[i] & 0xFFL);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return the horizontal sampling factor of the first component in the frame header of a JPEG stream,
+	 * which is 2 if the chroma is subsampled and 1 otherwise
+	 */
+	public static final int getLumaSampling(final byte[] jpeg, final int length) {
+		for (int i = 2; i + 3 < length && (jpeg[i] & 0xFF) == 0xFF;) {
+			final int marker = jpeg[i + 1] & 0xFF;
+			final int segmentLength = (jpeg[i + 2] & 0xFF) << 8 | (jpeg[i + 3] & 0xFF);
+			
+			// SOF0 to SOF3: length (2), precision (1), height (2), width (2), component count (1), then id and sampling
+			if (0xC0 <= marker && marker <= 0xC3 && i + 11 < length) {
+				return (jpeg[i + 11] & 0xFF) >> 4;
+			}
+			
+			i += 2 + segmentLength;
+		}
+		
+		throw new IllegalArgumentException("Not a JPEG stream");
+	}
+	
+	static final long align(final long offset) {
+		return (offset + 7L) & ~7L;
+	}
+	
+	static final long key(final int tileX, final int tileY) {
+		return ((long) tileX << Integer.SIZE) | (tileY & 0xFFFFFFFFL);
+	}
+	
+}
@@ -44,6 +44,20 @@ public final class Canvas implements Serializable {
 		return this;
 	}
 	
+	/**
+	 * Draws into <code>image</code> from now on, which may be a view of a larger image.
+	 */
+	public final Canvas setImage(final BufferedImage image) {
+		if (this.getGraphics() != null) {
+			this.getGraphics().dispose();
+		}
+		
+		this.image = image;
+		this.graphics = image.createGraphics();
+		
+		return this;
+	}
+	
 	public final Canvas clear(final Color color) {
 		this.getGraphics().setColor(color);
 		this.getGraphics().fillRect(0, 0, this.getWidth(), this.getHeight());
@@ -0,0 +1,208 @@
+package imj2.tools;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the disjoint tiles of a {@link PyramidBuilder} into DeepZoom tiles,
+ * which overlap their neighbors by <code>overlap</code> pixels on each inner side.
+ * <br>A tile is kept until all the tiles overlapping it have been emitted,
+ * so only about two rows of tiles per level are in memory when the tiles arrive row by row.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class DeepZoomTiler {
+	
+	private final PyramidBuilder geometry;
+	
+	private final int overlap;
+	
+	private final PyramidBuilder.TileConsumer consumer;
+	
+	private final List<Map<Long, PendingTile>> pendingTiles;
+	
+	private final List<BitSet> emittedTiles;
+	
+	/**
+	 * @param geometry
+	 * <br>Gives the dimensions of the levels and of the tiles
+	 * @param consumer
+	 * <br>Receives each overlapping tile once, possibly from several threads
+	 */
+	public DeepZoomTiler(final PyramidBuilder geometry, final int overlap, final PyramidBuilder.TileConsumer consumer) {
+		if (overlap < 0 || min(geometry.getTileWidth(), geometry.getTileHeight()) < overlap) {
+			throw new IllegalArgumentException("Invalid overlap: " + overlap);
+		}
+		
+		this.geometry = geometry;
+		this.overlap = overlap;
+		this.consumer = consumer;
+		this.pendingTiles = new ArrayList<>();
+		this.emittedTiles = new ArrayList<>();
+		
+		for (int lod = 0; lod <= geometry.getLODCount(); ++lod) {
+			this.pendingTiles.add(new HashMap<>());
+			this.emittedTiles.add(new BitSet());
+		}
+	}
+	
+	public final int getOverlap() {
+		return this.overlap;
+	}
+	
+	public final int getPendingTileCount() {
+		int result = 0;
+		
+		synchronized (this.pendingTiles) {
+			for (final Map<Long, PendingTile> pending : this.pendingTiles) {
+				result += pending.size();
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Can be called concurrently; <code>tile</code> is copied and can be reused after the call.
+	 */
+	public final void add(final int lod, final int tileX, final int tileY, final BufferedImage tile) {
+		final int tileWidth = this.geometry.getTileWidth();
+		final int tileHeight = this.geometry.getTileHeight();
+		final List<long[]> readyTiles = new ArrayList<>();
+		
+		synchronized (this.pendingTiles) {
+			final Map<Long, PendingTile> pending = this.pendingTiles.get(lod);
+			
+			pending.put(PyramidBuilder.key(tileX, tileY), new PendingTile(copy(tile), this.getNeighbors(lod, tileX, tileY).size()));
+			
+			for (final long[] neighbor : this.getNeighbors(lod, tileX, tileY)) {
+				final int index = this.geometry.getTileIndex(lod, (int) neighbor[0], (int) neighbor[1]);
+				
+				if (!this.emittedTiles.get(lod).get(index) && this.areNeighborsPending(lod, (int) neighbor[0], (int) neighbor[1])) {
+					this.emittedTiles.get(lod).set(index);
+					readyTiles.add(neighbor);
+				}
+			}
+		}
+		
+		for (final long[] readyTile : readyTiles) {
+			final int x = (int) readyTile[0];
+			final int y = (int) readyTile[1];
+			final int left = 0 < x ? this.overlap : 0;
+			final int top = 0 < y ? this.overlap : 0;
+			final int right = x + tileWidth < this.geometry.getLODWidth(lod) ? this.overlap : 0;
+			final int bottom = y + tileHeight < this.geometry.getLODHeight(lod) ? this.overlap : 0;
+			final BufferedImage result = new BufferedImage(
+					left + min(tileWidth, this.geometry.getLODWidth(lod) - x) + right,
+					top + min(tileHeight, this.geometry.getLODHeight(lod) - y) + bottom, BufferedImage.TYPE_3BYTE_BGR);
+			final List<long[]> neighbors = this.getNeighbors(lod, x, y);
+			final List<PendingTile> neighborTiles = new ArrayList<>(neighbors.size());
+			
+			synchronized (this.pendingTiles) {
+				for (final long[] neighbor : neighbors) {
+					neighborTiles.add(this.pendingTiles.get(lod).get(PyramidBuilder.key((int) neighbor[0], (int) neighbor[1])));
+				}
+			}
+			
+			for (int i = 0; i < neighbors.size(); ++i) {
+				final BufferedImage neighbor = neighborTiles.get(i).getImage();
+				final int neighborLeft = left + (int) neighbors.get(i)[0] - x;
+				final int neighborTop = top + (int) neighbors.get(i)[1] - y;
+				final int targetLeft = max(0, neighborLeft);
+				final int targetTop = max(0, neighborTop);
+				final int targetRight = min(result.getWidth(), neighborLeft + neighbor.getWidth());
+				final int targetBottom = min(result.getHeight(), neighborTop + neighbor.getHeight());
+				
+				final int width = targetRight - targetLeft;
+				final int height = targetBottom - targetTop;
+				
+				result.getRaster().setDataElements(targetLeft, targetTop, width, height, neighbor.getRaster().getDataElements(
+						targetLeft - neighborLeft, targetTop - neighborTop, width, height, null));
+			}
+			
+			this.consumer.tile(lod, x, y, result);
+			
+			synchronized (this.pendingTiles) {
+				for (int i = 0; i < neighbors.size(); ++i) {
+					if (neighborTiles.get(i).userDone()) {
+						this.pendingTiles.get(lod).remove(PyramidBuilder.key((int) neighbors.get(i)[0], (int) neighbors.get(i)[1]));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the existing tiles whose pixels are within <code>overlap</code> of the tile at (<code>tileX</code>, <code>tileY</code>),
+	 * including itself
+	 */
+	private final List<long[]> getNeighbors(final int lod, final int tileX, final int tileY) {
+		final List<long[]> result = new ArrayList<>(9);
+		final int tileWidth = this.geometry.getTileWidth();
+		final int tileHeight = this.geometry.getTileHeight();
+		final int d = 0 < this.overlap ? 1 : 0;
+		
+		for (int y = tileY - d * tileHeight; y <= tileY + d * tileHeight; y += tileHeight) {
+			for (int x = tileX - d * tileWidth; x <= tileX + d * tileWidth; x += tileWidth) {
+				if (0 <= x && x < this.geometry.getLODWidth(lod) && 0 <= y && y < this.geometry.getLODHeight(lod)) {
+					result.add(new long[] { x, y });
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	private final boolean areNeighborsPending(final int lod, final int tileX, final int tileY) {
+		for (final long[] neighbor : this.getNeighbors(lod, tileX, tileY)) {
+			if (!this.pendingTiles.get(lod).containsKey(PyramidBuilder.key((int) neighbor[0], (int) neighbor[1]))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	static final BufferedImage copy(final BufferedImage image) {
+		final BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		
+		result.getRaster().setRect(image.getRaster());
+		
+		return result;
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	static final class PendingTile {
+		
+		private final BufferedImage image;
+		
+		private int remainingUserCount;
+		
+		PendingTile(final BufferedImage image, final int userCount) {
+			this.image = image;
+			this.remainingUserCount = userCount;
+		}
+		
+		final BufferedImage getImage() {
+			return this.image;
+		}
+		
+		/**
+		 * @return <code>true</code> if this was the last tile overlapping this one
+		 */
+		final synchronized boolean userDone() {
+			return --this.remainingUserCount == 0;
+		}
+		
+	}
+	
+}
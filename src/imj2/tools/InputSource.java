@@ -3,6 +3,7 @@ package imj2.tools;
 import static multij.tools.Tools.iterable;
 import static multij.tools.Tools.unchecked;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -10,12 +11,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
+ * An entry can be stored as a reference to another one: the entry <code>key + REFERENCE_SUFFIX</code>
+ * then holds the name of the entry with the actual content, and {@link #open(String)} follows it.
+ * 
  * @author codistmonk (creation 2014-09-09)
  */
 public final class InputSource implements Serializable, Closeable {
@@ -26,6 +32,8 @@ public final class InputSource implements Serializable, Closeable {
 	
 	private final Map<String, ZipEntry> zipEntries;
 	
+	private final Map<String, String> references;
+	
 	public InputSource(final String id) {
 		this.file = new File(id);
 		
@@ -46,9 +54,41 @@ public final class InputSource implements Serializable, Closeable {
 			this.zip = null;
 			this.zipEntries = null;
 		}
+		
+		this.references = new ConcurrentHashMap<>();
+	}
+	
+	public final boolean contains(final String key) {
+		return this.containsEntry(key) || this.containsEntry(key + REFERENCE_SUFFIX);
+	}
+	
+	/**
+	 * @return the name of the entry holding the content of <code>key</code>, which is <code>key</code>
+	 * unless <code>key</code> is stored as a reference
+	 */
+	public final String resolve(final String key) {
+		if (this.containsEntry(key) || !this.containsEntry(key + REFERENCE_SUFFIX)) {
+			return key;
+		}
+		
+		return this.references.computeIfAbsent(key, k -> {
+			try (final InputStream input = this.openEntry(k + REFERENCE_SUFFIX)) {
+				return new String(readAll(input), StandardCharsets.UTF_8);
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		});
 	}
 	
 	public final InputStream open(final String key) {
+		return this.openEntry(this.resolve(key));
+	}
+	
+	private final boolean containsEntry(final String key) {
+		return this.zip != null ? this.zipEntries.containsKey(key) : new File(this.file, key).exists();
+	}
+	
+	private final InputStream openEntry(final String key) {
 		try {
 			if (this.zip != null) {
 				if (this.zipEntries.get(key) == null) {
@@ -77,4 +117,20 @@ public final class InputSource implements Serializable, Closeable {
 	 */
 	private static final long serialVersionUID = 115519844836294165L;
 	
+	/**
+	 * {@value}.
+	 */
+	public static final String REFERENCE_SUFFIX = ".ref";
+	
+	public static final byte[] readAll(final InputStream input) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1 << 16];
+		
+		for (int n = input.read(buffer); 0 <= n; n = input.read(buffer)) {
+			result.write(buffer, 0, n);
+		}
+		
+		return result.toByteArray();
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package imj2.tools;
+
+import static multij.tools.Tools.unchecked;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only record of completed entries (name, offset, size and CRC).
+ * <br>A record is appended once its data has reached the file system, so an entry that was being written
+ * when the process died is simply missing from the journal.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class Journal implements Closeable {
+	
+	private final File file;
+	
+	private final Map<String, Record> records;
+	
+	private DataOutputStream output;
+	
+	/**
+	 * Creates a new journal, replacing any existing <code>file</code>.
+	 */
+	public Journal(final File file) {
+		this.file = file;
+		this.records = new ConcurrentHashMap<>();
+		
+		try {
+			this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	public final File getFile() {
+		return this.file;
+	}
+	
+	public final boolean contains(final String name) {
+		return this.records.containsKey(name);
+	}
+	
+	public final Record get(final String name) {
+		return this.records.get(name);
+	}
+	
+	public final Map<String, Record> getRecords() {
+		return Collections.unmodifiableMap(this.records);
+	}
+	
+	public final synchronized void append(final String name, final long offset, final int size, final long crc) {
+		this.append(name, offset, size, crc, true);
+	}
+	
+	/**
+	 * @param flush
+	 * <br>Use <code>false</code> when more records immediately follow
+	 */
+	public final synchronized void append(final String name, final long offset, final int size, final long crc,
+			final boolean flush) {
+		try {
+			this.output.writeUTF(name);
+			this.output.writeLong(offset);
+			this.output.writeInt(size);
+			this.output.writeLong(crc);
+			
+			if (flush) {
+				this.output.flush();
+			}
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.records.put(name, new Record(offset, size, crc));
+	}
+	
+	@Override
+	public final synchronized void close() throws IOException {
+		if (this.output != null) {
+			this.output.close();
+			this.output = null;
+		}
+	}
+	
+	/**
+	 * @return the complete records of <code>file</code>; a truncated last record is ignored
+	 */
+	public static final Map<String, Record> read(final File file) {
+		final Map<String, Record> result = new ConcurrentHashMap<>();
+		
+		if (file.exists()) {
+			try (final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				while (true) {
+					final String name = input.readUTF();
+					
+					result.put(name, new Record(input.readLong(), input.readInt(), input.readLong()));
+				}
+			} catch (final EOFException exception) {
+				// End of the journal, possibly in the middle of a record
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class Record {
+		
+		private final long offset;
+		
+		private final int size;
+		
+		private final long crc;
+		
+		public Record(final long offset, final int size, final long crc) {
+			this.offset = offset;
+			this.size = size;
+			this.crc = crc;
+		}
+		
+		/**
+		 * @return the position of the data in the archive, or -1 for a file
+		 */
+		public final long getOffset() {
+			return this.offset;
+		}
+		
+		public final int getSize() {
+			return this.size;
+		}
+		
+		public final long getCrc() {
+			return this.crc;
+		}
+		
+	}
+	
+}
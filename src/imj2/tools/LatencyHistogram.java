@@ -0,0 +1,116 @@
+package imj2.tools;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.min;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with one bucket per power of 2 of microseconds.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class LatencyHistogram {
+	
+	private final AtomicLongArray buckets;
+	
+	private final AtomicLong totalNanoseconds;
+	
+	private final AtomicLong maximumNanoseconds;
+	
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKET_COUNT);
+		this.totalNanoseconds = new AtomicLong();
+		this.maximumNanoseconds = new AtomicLong();
+	}
+	
+	/**
+	 * Can be called concurrently.
+	 */
+	public final void record(final long nanoseconds) {
+		this.buckets.incrementAndGet(bucket(nanoseconds));
+		this.totalNanoseconds.addAndGet(nanoseconds);
+		this.maximumNanoseconds.accumulateAndGet(nanoseconds, Math::max);
+	}
+	
+	public final long getCount() {
+		long result = 0L;
+		
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			result += this.buckets.get(i);
+		}
+		
+		return result;
+	}
+	
+	public final double getMeanMilliseconds() {
+		final long count = this.getCount();
+		
+		return count == 0L ? 0.0 : this.totalNanoseconds.get() / 1.0E6 / count;
+	}
+	
+	public final double getMaximumMilliseconds() {
+		return this.maximumNanoseconds.get() / 1.0E6;
+	}
+	
+	/**
+	 * @param quantile
+	 * <br>In [0, 1]
+	 * @return the upper bound of the bucket containing <code>quantile</code>, in milliseconds
+	 */
+	public final double getQuantileMilliseconds(final double quantile) {
+		final long[] counts = this.getBuckets();
+		long total = 0L;
+		
+		for (final long count : counts) {
+			total += count;
+		}
+		
+		final long rank = (long) ceil(quantile * total);
+		long cumulatedCount = 0L;
+		
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			cumulatedCount += counts[i];
+			
+			if (0L < cumulatedCount && rank <= cumulatedCount) {
+				return min((1L << i) / 1.0E3, this.getMaximumMilliseconds());
+			}
+		}
+		
+		return 0.0;
+	}
+	
+	/**
+	 * @return the count of each bucket; bucket <code>i</code> holds the durations in [2<sup>i - 1</sup>, 2<sup>i</sup>[ microseconds,
+	 * and bucket 0 the durations under 1 microsecond
+	 */
+	public final long[] getBuckets() {
+		final long[] result = new long[BUCKET_COUNT];
+		
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			result[i] = this.buckets.get(i);
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public final String toString() {
+		return String.format(Locale.ENGLISH, "n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", this.getCount(), this.getMeanMilliseconds(),
+				this.getQuantileMilliseconds(0.5), this.getQuantileMilliseconds(0.99), this.getMaximumMilliseconds());
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int BUCKET_COUNT = 40;
+	
+	static final int bucket(final long nanoseconds) {
+		final long microseconds = nanoseconds / 1_000L;
+		
+		return min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(microseconds));
+	}
+	
+}
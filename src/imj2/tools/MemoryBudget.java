@@ -0,0 +1,127 @@
+package imj2.tools;
+
+import static java.lang.Math.max;
+import static multij.tools.Tools.unchecked;
+
+import imj2.core.IMJCoreTools;
+
+/**
+ * Admits tasks against a heap budget, given the estimated number of bytes each one needs while it runs.
+ * <br>While tasks hold part of the budget, the memory limit of the {@link IMJCoreTools} cache is lowered by as much;
+ * the cache cleaner applies the lower limit after the next garbage collection, and tasks that had to wait trim the cache once admitted.
+ * <br>A task larger than the whole budget is admitted alone, so that it cannot wait forever.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class MemoryBudget {
+	
+	private long capacity;
+	
+	private long reserved;
+	
+	private long cacheMemoryLimit;
+	
+	private long maximumReserved;
+	
+	private MemoryBudget() {
+		this.capacity = Long.MAX_VALUE;
+	}
+	
+	public final synchronized long getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * @param capacity
+	 * <br>In bytes; <code>Long.MAX_VALUE</code>, the default, admits everything
+	 */
+	public final synchronized MemoryBudget setCapacity(final long capacity) {
+		this.capacity = capacity;
+		
+		this.notifyAll();
+		
+		return this;
+	}
+	
+	public final synchronized long getReserved() {
+		return this.reserved;
+	}
+	
+	/**
+	 * @return the highest number of bytes reserved at once
+	 */
+	public final synchronized long getMaximumReserved() {
+		return this.maximumReserved;
+	}
+	
+	/**
+	 * Blocks until <code>bytes</code> fit in the budget.
+	 */
+	public final void acquire(final long bytes) {
+		if (bytes <= 0L) {
+			return;
+		}
+		
+		final boolean waited;
+		
+		synchronized (this) {
+			waited = !this.fits(bytes);
+			
+			if (waited) {
+				try {
+					while (!this.fits(bytes)) {
+						this.wait();
+					}
+				} catch (final InterruptedException exception) {
+					throw unchecked(exception);
+				}
+			}
+			
+			if (this.reserved == 0L) {
+				// The limit chosen by the user when the budget is idle
+				this.cacheMemoryLimit = IMJCoreTools.getCacheMemoryLimit();
+			}
+			
+			this.reserved += bytes;
+			this.maximumReserved = max(this.maximumReserved, this.reserved);
+			this.updateCacheMemoryLimit();
+		}
+		
+		if (waited) {
+			// Outside the monitor, so that the other tasks are not blocked behind the cache
+			IMJCoreTools.trimCache();
+		}
+	}
+	
+	public final synchronized void release(final long bytes) {
+		if (bytes <= 0L) {
+			return;
+		}
+		
+		this.reserved -= bytes;
+		this.updateCacheMemoryLimit();
+		
+		this.notifyAll();
+	}
+	
+	@Override
+	public final synchronized String toString() {
+		return (this.reserved >> 20) + "MB/" + (this.capacity == Long.MAX_VALUE ? "unlimited" : (this.capacity >> 20) + "MB");
+	}
+	
+	private final boolean fits(final long bytes) {
+		return this.reserved == 0L || this.reserved + bytes <= this.capacity;
+	}
+	
+	private final void updateCacheMemoryLimit() {
+		IMJCoreTools.setCacheMemoryLimit(this.reserved == 0L ? this.cacheMemoryLimit
+				: max(this.cacheMemoryLimit / 8L, this.cacheMemoryLimit - this.reserved));
+	}
+	
+	private static final MemoryBudget instance = new MemoryBudget();
+	
+	public static final MemoryBudget getInstance() {
+		return instance;
+	}
+	
+}
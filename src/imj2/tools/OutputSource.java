@@ -1,38 +1,107 @@
 package imj2.tools;
 
 import static multij.tools.Tools.unchecked;
+import static multij.xml.XMLTools.getNumber;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import multij.xml.XMLTools;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 /**
+ * Writes entries into a ZIP archive or a directory and records them in a {@link Journal}.
+ * <br>If the journal of an interrupted run is found, its entries can be recovered with {@link #restore(String)}.
+ * <br>If <code>id</code> ends with <code>.tif</code>, the JPEG tile entries of a WSI and its <code>metadata.xml</code>
+ * are written into a pyramidal BigTIFF instead; this mode cannot be resumed or read back.
+ * <br>In ZIP and directory modes, an entry can be written as a reference to another one with {@link #reference(String, String)},
+ * as understood by {@link InputSource}.
+ * 
  * @author codistmonk (creation 2014-09-09)
  */
 public final class OutputSource implements Serializable, Closeable {
 	
 	private final File file;
 	
-	private final ZipOutputStream zip;
+	private final Journal journal;
+	
+	private final Map<String, Journal.Record> recoverableEntries;
+	
+	private final Set<String> restoredEntries;
+	
+	private final File previousFile;
+	
+	private final File previousJournalFile;
+	
+	private final ZipSink zip;
+	
+	private final BigTiffWriter tiff;
+	
+	private RandomAccessFile previousZip;
 	
 	public OutputSource(final String id) {
 		this.file = new File(id);
+		final File journalFile = journalFile(id);
+		this.previousJournalFile = new File(journalFile.getPath() + ".old");
 		
-		if (id.endsWith(".zip")) {
-			try {
-				this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(id)));
-				this.zip.setLevel(ZipOutputStream.STORED);
-			} catch (final IOException exception) {
-				throw unchecked(exception);
+		try {
+			if (isTiff(id)) {
+				this.previousFile = null;
+			} else if (id.endsWith(".zip")) {
+				this.previousFile = new File(id + ".old");
+				
+				// If the previous file exists, the last restoration was interrupted and must start again from it
+				if (!this.previousFile.exists() && this.file.exists() && journalFile.exists()) {
+					Files.move(this.file.toPath(), this.previousFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+					Files.move(journalFile.toPath(), this.previousJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				}
+			} else {
+				this.previousFile = null;
+				
+				if (!this.previousJournalFile.exists() && journalFile.exists()) {
+					Files.move(journalFile.toPath(), this.previousJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				}
 			}
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.recoverableEntries = Journal.read(this.previousJournalFile);
+		this.restoredEntries = ConcurrentHashMap.newKeySet();
+		this.journal = new Journal(journalFile);
+		
+		if (isTiff(id)) {
+			this.zip = null;
+			this.tiff = new BigTiffWriter(this.file);
+		} else if (id.endsWith(".zip")) {
+			this.zip = new ZipSink(this.file, ZipSink.DEFAULT_QUEUE_CAPACITY, this.journal);
+			this.tiff = null;
 		} else {
 			this.zip = null;
+			this.tiff = null;
 			
 			if (!this.file.mkdirs() && !this.file.isDirectory()) {
 				throw unchecked(new IOException());
@@ -40,45 +109,290 @@ public final class OutputSource implements Serializable, Closeable {
 		}
 	}
 	
-	public final OutputStream open(final String key) {
+	public final File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * @return the entries completed by an interrupted run, which can be recovered with {@link #restore(String)}
+	 */
+	public final Set<String> getRecoverableEntries() {
+		return Collections.unmodifiableSet(this.recoverableEntries.keySet());
+	}
+	
+	/**
+	 * Recovers an entry completed by an interrupted run if its content matches the recorded size and CRC.
+	 * <br>A reference is only recovered if its target has been recovered before.
+	 * <br>Can be called concurrently.
+	 * 
+	 * @return <code>false</code> if the entry is missing or corrupt, in which case it must be written again
+	 */
+	public final boolean restore(final String key) {
+		final Journal.Record record = this.recoverableEntries.get(key);
+		
+		if (record == null) {
+			return false;
+		}
+		
 		try {
-			final ZipOutputStream zip = this.zip;
+			final byte[] data = new byte[record.getSize()];
 			
-			if (zip != null) {
-				zip.putNextEntry(new ZipEntry(key));
-				
-				return new OutputStream() {
-					
-					@Override
-					public final void write(final int b) throws IOException {
-						zip.write(b);
+			if (this.zip != null) {
+				synchronized (this) {
+					if (this.previousZip == null) {
+						this.previousZip = new RandomAccessFile(this.previousFile, "r");
 					}
 					
-					@Override
-					public final void write(final byte[] b) throws IOException {
-						zip.write(b);
+					if (this.previousZip.length() < record.getOffset() + record.getSize()) {
+						return false;
 					}
 					
-					@Override
-					public final void write(final byte[] b, final int off, final int len)
-							throws IOException {
-						zip.write(b, off, len);
-					}
+					this.previousZip.seek(record.getOffset());
+					this.previousZip.readFully(data);
+				}
+			} else {
+				final File entryFile = new File(this.file, key);
+				
+				if (entryFile.length() != record.getSize()) {
+					return false;
+				}
+				
+				try (final RandomAccessFile input = new RandomAccessFile(entryFile, "r")) {
+					input.readFully(data);
+				}
+			}
+			
+			final CRC32 crc = new CRC32();
+			
+			crc.update(data);
+			
+			if (crc.getValue() != record.getCrc()) {
+				return false;
+			}
+			
+			if (key.endsWith(InputSource.REFERENCE_SUFFIX)
+					&& !this.restoredEntries.contains(new String(data, StandardCharsets.UTF_8))) {
+				return false;
+			}
+			
+			if (this.zip != null) {
+				this.zip.put(key, data, data.length);
+			} else {
+				this.journal.append(key, -1L, data.length, crc.getValue());
+			}
+			
+			this.restoredEntries.add(key);
+			
+			return true;
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * Deletes what remains of the interrupted run; the entries that were not restored are lost.
+	 */
+	public final void endRestore() {
+		try {
+			synchronized (this) {
+				if (this.previousZip != null) {
+					this.previousZip.close();
+					this.previousZip = null;
+				}
+			}
+			
+			if (this.zip != null) {
+				// The restored entries must be in the new journal before the previous archive disappears
+				this.zip.flush();
+				Files.deleteIfExists(this.previousFile.toPath());
+			}
+			
+			Files.deleteIfExists(this.previousJournalFile.toPath());
+			this.recoverableEntries.clear();
+			this.restoredEntries.clear();
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * Can be called concurrently; in ZIP mode, the entry is written when the returned stream is closed.
+	 * <br>In directory mode, the entry is written into a temporary file that is renamed when the stream is closed,
+	 * and the directories of <code>key</code> are created as needed.
+	 */
+	public final OutputStream open(final String key) {
+		try {
+			if (this.zip != null) {
+				return this.zip.open(key);
+			}
+			
+			if (this.tiff != null) {
+				return new ByteArrayOutputStream(ZipSink.DEFAULT_ENTRY_BUFFER_SIZE) {
 					
-					@Override
-					public final void flush() throws IOException {
-						zip.flush();
-					}
+					private boolean closed;
 					
 					@Override
 					public final void close() throws IOException {
-						zip.closeEntry();
+						if (!this.closed) {
+							this.closed = true;
+							OutputSource.this.write(key, this.buf, this.count);
+						}
 					}
 					
 				};
 			}
 			
-			return new BufferedOutputStream(new FileOutputStream(new File(this.file, key)));
+			final File entryFile = new File(this.file, key);
+			final File temporaryFile = new File(this.file, key + ".tmp");
+			final CRC32 crc = new CRC32();
+			
+			if (!entryFile.getParentFile().mkdirs() && !entryFile.getParentFile().isDirectory()) {
+				throw new IOException("Failed to create " + entryFile.getParentFile());
+			}
+			
+			return new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)), crc) {
+				
+				private long size;
+				
+				private boolean closed;
+				
+				@Override
+				public final void write(final int b) throws IOException {
+					super.write(b);
+					++this.size;
+				}
+				
+				@Override
+				public final void write(final byte[] b, final int off, final int len) throws IOException {
+					super.write(b, off, len);
+					this.size += len;
+				}
+				
+				@Override
+				public final void close() throws IOException {
+					if (!this.closed) {
+						this.closed = true;
+						super.close();
+						Files.move(temporaryFile.toPath(), entryFile.toPath(),
+								StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+						OutputSource.this.journal.append(key, -1L, (int) this.size, crc.getValue());
+					}
+				}
+				
+			};
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * Can be called concurrently; in ZIP mode, <code>data</code> must not be modified afterwards.
+	 */
+	public final void write(final String key, final byte[] data, final int length) {
+		if (this.zip != null) {
+			this.zip.put(key, data, length);
+		} else if (this.tiff != null) {
+			this.writeTiff(key, data, length);
+		} else {
+			try (final OutputStream output = this.open(key)) {
+				output.write(data, 0, length);
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		}
+	}
+	
+	/**
+	 * @return <code>false</code> in TIFF mode
+	 */
+	public final boolean isReferencing() {
+		return this.tiff == null;
+	}
+	
+	/**
+	 * Writes <code>key</code> as a reference to <code>target</code>, which must be written by this output too;
+	 * can be called concurrently.
+	 * 
+	 * @throws UnsupportedOperationException if not {@link #isReferencing()}
+	 */
+	public final void reference(final String key, final String target) {
+		if (!this.isReferencing()) {
+			throw new UnsupportedOperationException();
+		}
+		
+		final byte[] data = target.getBytes(StandardCharsets.UTF_8);
+		
+		this.write(key + InputSource.REFERENCE_SUFFIX, data, data.length);
+	}
+	
+	/**
+	 * @return <code>true</code> if <code>key</code> has been written, possibly as a reference;
+	 * in ZIP mode, the entries still in the queue of the {@link ZipSink} are not seen
+	 */
+	public final boolean contains(final String key) {
+		return this.containsEntry(key) || this.containsEntry(key + InputSource.REFERENCE_SUFFIX);
+	}
+	
+	private final boolean containsEntry(final String key) {
+		return this.zip != null ? this.zip.contains(key) : this.journal.contains(key);
+	}
+	
+	private final void writeTiff(final String key, final byte[] data, final int length) {
+		if ("metadata.xml".equals(key)) {
+			final Document metadata = XMLTools.parse(new ByteArrayInputStream(data, 0, length));
+			final String micronsPerPixel = metadata.getDocumentElement().getAttribute("micronsPerPixel");
+			
+			for (final Node subimage : XMLTools.getNodes(metadata, "image/subimage")) {
+				this.tiff.setLevel(getNumber(subimage, "@id").intValue(),
+						getNumber(subimage, "@width").intValue(), getNumber(subimage, "@height").intValue(),
+						getNumber(subimage, "@tileWidth").intValue(), getNumber(subimage, "@tileHeight").intValue());
+			}
+			
+			this.tiff.setDescription(new String(data, 0, length, StandardCharsets.UTF_8));
+			
+			if (!micronsPerPixel.isEmpty()) {
+				this.tiff.setMicronsPerPixel(Double.parseDouble(micronsPerPixel));
+			}
+		} else {
+			final Matcher matcher = TILE_ENTRY.matcher(key);
+			
+			if (!matcher.matches() || !"jpg".equals(matcher.group(4))) {
+				throw new IllegalArgumentException("Not a JPEG tile entry: " + key);
+			}
+			
+			this.tiff.writeTile(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+					Integer.parseInt(matcher.group(3)), data, length);
+		}
+		
+		this.journal.append(key, -1L, length, 0L, false);
+	}
+	
+	/**
+	 * Reads back an entry written by this output, following references.
+	 */
+	public final InputStream reopen(final String key) {
+		if (!this.containsEntry(key) && this.containsEntry(key + InputSource.REFERENCE_SUFFIX)) {
+			try (final InputStream reference = this.reopenEntry(key + InputSource.REFERENCE_SUFFIX)) {
+				return this.reopenEntry(new String(InputSource.readAll(reference), StandardCharsets.UTF_8));
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		}
+		
+		return this.reopenEntry(key);
+	}
+	
+	private final InputStream reopenEntry(final String key) {
+		try {
+			if (this.zip != null) {
+				return this.zip.reopen(key);
+			}
+			
+			if (this.tiff != null) {
+				throw new UnsupportedOperationException();
+			}
+			
+			return new FileInputStream(new File(this.file, key));
 		} catch (final IOException exception) {
 			throw unchecked(exception);
 		}
@@ -86,8 +400,22 @@ public final class OutputSource implements Serializable, Closeable {
 	
 	@Override
 	public final void close() throws IOException {
-		if (this.zip != null) {
-			this.zip.close();
+		try {
+			if (this.zip != null) {
+				this.zip.close();
+			}
+			
+			if (this.tiff != null) {
+				this.tiff.close();
+			}
+		} finally {
+			this.journal.close();
+			
+			synchronized (this) {
+				if (this.previousZip != null) {
+					this.previousZip.close();
+				}
+			}
 		}
 	}
 	
@@ -96,4 +424,17 @@ public final class OutputSource implements Serializable, Closeable {
 	 */
 	private static final long serialVersionUID = 115519844836294165L;
 	
-}
\ No newline at end of file
+	/**
+	 * Tile entries are named <code>{image}_svs{lod}_{x}_{y}.{format}</code>.
+	 */
+	static final Pattern TILE_ENTRY = Pattern.compile(".*_svs(\\d+)_(\\d+)_(\\d+)\\.(\\w+)");
+	
+	public static final File journalFile(final String id) {
+		return new File(id + ".journal");
+	}
+	
+	public static final boolean isTiff(final String id) {
+		return id.endsWith(".tif") || id.endsWith(".tiff");
+	}
+	
+}
@@ -0,0 +1,166 @@
+package imj2.tools;
+
+import static multij.tools.Tools.unchecked;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Worker threads fed through a bounded queue; {@link #submit(Object)} blocks while the queue is full,
+ * which propagates backpressure to the previous stage.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class PipelineStage<T> implements Closeable {
+	
+	private final String name;
+	
+	private final BlockingQueue<Object> queue;
+	
+	private final Thread[] workers;
+	
+	private final Consumer<T> processor;
+	
+	private final Consumer<T> discarder;
+	
+	private final LatencyHistogram latencies;
+	
+	private volatile Throwable failure;
+	
+	private boolean closed;
+	
+	/**
+	 * @param processor
+	 * <br>Called concurrently by the worker threads
+	 */
+	public PipelineStage(final String name, final int workerCount, final int queueCapacity, final Consumer<T> processor) {
+		this(name, workerCount, queueCapacity, processor, item -> {
+			// NOP
+		});
+	}
+	
+	/**
+	 * @param discarder
+	 * <br>Called instead of <code>processor</code> on the items drained after a failure,
+	 * so that they can give back the resources they hold
+	 */
+	public PipelineStage(final String name, final int workerCount, final int queueCapacity, final Consumer<T> processor,
+			final Consumer<T> discarder) {
+		this.name = name;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.workers = new Thread[workerCount];
+		this.processor = processor;
+		this.discarder = discarder;
+		this.latencies = new LatencyHistogram();
+		
+		for (int i = 0; i < workerCount; ++i) {
+			this.workers[i] = new Thread(this::work, name + " " + i);
+			this.workers[i].setDaemon(true);
+			this.workers[i].start();
+		}
+	}
+	
+	public final String getName() {
+		return this.name;
+	}
+	
+	public final int getWorkerCount() {
+		return this.workers.length;
+	}
+	
+	public final int getQueueSize() {
+		return this.queue.size();
+	}
+	
+	public final int getQueueCapacity() {
+		return this.queue.size() + this.queue.remainingCapacity();
+	}
+	
+	/**
+	 * @return the processing times of the items, whose count is the number of processed items
+	 */
+	public final LatencyHistogram getLatencies() {
+		return this.latencies;
+	}
+	
+	public final void submit(final T item) {
+		this.checkFailure();
+		
+		try {
+			this.queue.put(item);
+		} catch (final InterruptedException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	/**
+	 * Waits until all the submitted items are processed.
+	 */
+	@Override
+	public final void close() {
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			
+			this.closed = true;
+		}
+		
+		try {
+			for (int i = 0; i < this.workers.length; ++i) {
+				this.queue.put(END);
+			}
+			
+			for (final Thread worker : this.workers) {
+				worker.join();
+			}
+		} catch (final InterruptedException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.checkFailure();
+	}
+	
+	@Override
+	public final String toString() {
+		return this.getName() + " " + this.getQueueSize() + "/" + this.getQueueCapacity();
+	}
+	
+	private final void checkFailure() {
+		if (this.failure != null) {
+			throw unchecked(this.failure);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private final void work() {
+		try {
+			for (Object item = this.queue.take(); item != END; item = this.queue.take()) {
+				// After a failure, keep draining the queue so that the producers do not block forever
+				try {
+					if (this.failure == null) {
+						final long start = System.nanoTime();
+						
+						this.processor.accept((T) item);
+						this.latencies.record(System.nanoTime() - start);
+					} else {
+						this.discarder.accept((T) item);
+					}
+				} catch (final Throwable exception) {
+					if (this.failure == null) {
+						this.failure = exception;
+					} else if (this.failure != exception) {
+						this.failure.addSuppressed(exception);
+					}
+				}
+			}
+		} catch (final InterruptedException exception) {
+			this.failure = exception;
+		}
+	}
+	
+	static final Object END = new Object();
+	
+}
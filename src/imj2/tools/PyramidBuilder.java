@@ -0,0 +1,352 @@
+package imj2.tools;
+
+import static imj2.core.IMJCoreTools.quantize;
+import static java.lang.Math.min;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class PyramidBuilder implements Serializable {
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final int tileWidth;
+	
+	private final int tileHeight;
+	
+	private final int lodCount;
+	
+	private final boolean roundingUp;
+	
+	private final Reducer reducer;
+	
+	private final TileConsumer consumer;
+	
+	private final List<Map<Long, PendingTile>> pendingTiles;
+	
+	private final transient TilePool tiles;
+	
+	/**
+	 * @param lodCount
+	 * <br>Number of levels built above the base level
+	 * @param consumer
+	 * <br>Receives each reduced tile once, possibly from several threads;
+	 * the tile must not be modified and is only valid during the call, because its buffer is recycled afterwards
+	 */
+	public PyramidBuilder(final int width, final int height, final int tileWidth, final int tileHeight,
+			final int lodCount, final TileConsumer consumer) {
+		this(width, height, tileWidth, tileHeight, lodCount, false, consumer);
+	}
+	
+	/**
+	 * @param roundingUp
+	 * <br>If <code>true</code>, the dimensions of each level are rounded up instead of down, as in DeepZoom,
+	 * and the last odd row or column of a level is averaged with itself
+	 */
+	public PyramidBuilder(final int width, final int height, final int tileWidth, final int tileHeight,
+			final int lodCount, final boolean roundingUp, final TileConsumer consumer) {
+		this(width, height, tileWidth, tileHeight, lodCount, roundingUp, BufferedImage.TYPE_3BYTE_BGR, PyramidBuilder::reduce, consumer);
+	}
+	
+	/**
+	 * @param imageType
+	 * <br>Type of the tiles of the upper levels
+	 * @param reducer
+	 * <br>Writes each 2x2 block of a tile into a pixel of its parent, such as {@link #reduce(BufferedImage, BufferedImage, int, int)}
+	 * or {@link #reduceMajority(BufferedImage, BufferedImage, int, int)}
+	 */
+	public PyramidBuilder(final int width, final int height, final int tileWidth, final int tileHeight,
+			final int lodCount, final boolean roundingUp, final int imageType, final Reducer reducer, final TileConsumer consumer) {
+		if ((tileWidth & 1) != 0 || (tileHeight & 1) != 0) {
+			throw new IllegalArgumentException("Tile dimensions must be even: " + tileWidth + "x" + tileHeight);
+		}
+		
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.lodCount = lodCount;
+		this.roundingUp = roundingUp;
+		this.reducer = reducer;
+		this.consumer = consumer;
+		this.pendingTiles = new ArrayList<>(lodCount);
+		this.tiles = new TilePool(tileWidth, tileHeight, imageType, Integer.MAX_VALUE);
+		
+		for (int lod = 1; lod <= lodCount; ++lod) {
+			this.pendingTiles.add(new HashMap<>());
+		}
+	}
+	
+	public final int getLODWidth(final int lod) {
+		return this.roundingUp ? (this.width + (1 << lod) - 1) >> lod : this.width >> lod;
+	}
+	
+	public final int getLODHeight(final int lod) {
+		return this.roundingUp ? (this.height + (1 << lod) - 1) >> lod : this.height >> lod;
+	}
+	
+	public final int getTileWidth() {
+		return this.tileWidth;
+	}
+	
+	public final int getTileHeight() {
+		return this.tileHeight;
+	}
+	
+	public final int getLODCount() {
+		return this.lodCount;
+	}
+	
+	/**
+	 * @return the row-major index of the tile at (<code>tileX</code>, <code>tileY</code>) in level <code>lod</code>
+	 */
+	public final int getTileIndex(final int lod, final int tileX, final int tileY) {
+		final int columnCount = (this.getLODWidth(lod) + this.tileWidth - 1) / this.tileWidth;
+		
+		return (tileY / this.tileHeight) * columnCount + tileX / this.tileWidth;
+	}
+	
+	public final int getPendingTileCount() {
+		int result = 0;
+		
+		for (final Map<Long, PendingTile> pending : this.pendingTiles) {
+			synchronized (pending) {
+				result += pending.size();
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Reduces a finished base tile into the upper levels; can be called concurrently.
+	 * <br><code>tile</code> must have the type of the upper levels, <code>TYPE_3BYTE_BGR</code> by default,
+	 * and is only read during the call.
+	 */
+	public final void add(final int tileX, final int tileY, final BufferedImage tile) {
+		this.add(0, tileX, tileY, tile);
+	}
+	
+	/**
+	 * Same as {@link #add(int, int, BufferedImage)} for a tile of level <code>lod</code>,
+	 * which must then not be built from its children.
+	 */
+	public final void add(final int lod, final int tileX, final int tileY, final BufferedImage tile) {
+		this.reduce(lod, tileX, tileY, tile);
+	}
+	
+	/**
+	 * @return <code>true</code> if the tile at (<code>tileX</code>, <code>tileY</code>) in level <code>lod</code>
+	 * is reduced into a tile of level <code>lod + 1</code>
+	 */
+	public final boolean hasParent(final int lod, final int tileX, final int tileY) {
+		return lod < this.lodCount && quantize(tileX / 2, this.tileWidth) < this.getLODWidth(lod + 1)
+				&& quantize(tileY / 2, this.tileHeight) < this.getLODHeight(lod + 1);
+	}
+	
+	private final void reduce(final int lod, final int tileX, final int tileY, final BufferedImage tile) {
+		final int parentLOD = lod + 1;
+		
+		if (!this.hasParent(lod, tileX, tileY)) {
+			return;
+		}
+		
+		final int parentX = quantize(tileX / 2, this.tileWidth);
+		final int parentY = quantize(tileY / 2, this.tileHeight);
+		final PendingTile parent = this.getPendingTile(parentLOD, parentX, parentY);
+		
+		this.reducer.reduce(tile, parent.getImage(), tileX / 2 - parentX, tileY / 2 - parentY);
+		
+		if (parent.childDone()) {
+			final Map<Long, PendingTile> pending = this.pendingTiles.get(parentLOD - 1);
+			
+			synchronized (pending) {
+				pending.remove(key(parentX, parentY));
+			}
+			
+			this.consumer.tile(parentLOD, parentX, parentY, parent.getImage());
+			
+			this.reduce(parentLOD, parentX, parentY, parent.getImage());
+			
+			this.tiles.release(parent.getTile());
+		}
+	}
+	
+	private final PendingTile getPendingTile(final int lod, final int tileX, final int tileY) {
+		final Map<Long, PendingTile> pending = this.pendingTiles.get(lod - 1);
+		
+		synchronized (pending) {
+			return pending.computeIfAbsent(key(tileX, tileY), k -> {
+				final int childLODWidth = this.getLODWidth(lod - 1);
+				final int childLODHeight = this.getLODHeight(lod - 1);
+				int childCount = 0;
+				
+				for (int childY = 2 * tileY; childY < min(childLODHeight, 2 * tileY + 2 * this.tileHeight); childY += this.tileHeight) {
+					for (int childX = 2 * tileX; childX < min(childLODWidth, 2 * tileX + 2 * this.tileWidth); childX += this.tileWidth) {
+						++childCount;
+					}
+				}
+				
+				return new PendingTile(this.tiles.acquire(
+						min(this.tileWidth, this.getLODWidth(lod) - tileX), min(this.tileHeight, this.getLODHeight(lod) - tileY)), childCount);
+			});
+		}
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	private static final long serialVersionUID = -2399616745089327342L;
+	
+	static final long key(final int tileX, final int tileY) {
+		return ((long) tileX << Integer.SIZE) | (tileY & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Averages each 2x2 block of <code>source</code> into <code>target</code> at (<code>targetX</code>, <code>targetY</code>),
+	 * clipping to <code>target</code>; if <code>source</code> has an odd dimension, its last row or column is averaged with itself.
+	 */
+	public static final void reduce(final BufferedImage source, final BufferedImage target, final int targetX, final int targetY) {
+		final WritableRaster sourceRaster = source.getRaster();
+		final WritableRaster targetRaster = target.getRaster();
+		final ComponentSampleModel sourceModel = (ComponentSampleModel) sourceRaster.getSampleModel();
+		final ComponentSampleModel targetModel = (ComponentSampleModel) targetRaster.getSampleModel();
+		final byte[] sourceData = ((DataBufferByte) sourceRaster.getDataBuffer()).getData();
+		final byte[] targetData = ((DataBufferByte) targetRaster.getDataBuffer()).getData();
+		final int sourceStride = sourceModel.getScanlineStride();
+		final int targetStride = targetModel.getScanlineStride();
+		final int sourceOffset = -sourceRaster.getSampleModelTranslateY() * sourceStride - 3 * sourceRaster.getSampleModelTranslateX();
+		final int targetOffset = -targetRaster.getSampleModelTranslateY() * targetStride - 3 * targetRaster.getSampleModelTranslateX();
+		final int w = min((source.getWidth() + 1) / 2, target.getWidth() - targetX);
+		final int h = min((source.getHeight() + 1) / 2, target.getHeight() - targetY);
+		final int pairedW = min(w, source.getWidth() / 2);
+		
+		for (int y = 0; y < h; ++y) {
+			final int row0 = sourceOffset + 2 * y * sourceStride;
+			final int row1 = 2 * y + 1 < source.getHeight() ? row0 + sourceStride : row0;
+			final int targetRow = targetOffset + (targetY + y) * targetStride + 3 * targetX;
+			
+			for (int i = 0; i < 3 * pairedW; i += 3) {
+				final int j = 2 * i;
+				
+				for (int channel = 0; channel < 3; ++channel) {
+					targetData[targetRow + i + channel] = (byte) (((sourceData[row0 + j + channel] & 0xFF)
+							+ (sourceData[row0 + j + 3 + channel] & 0xFF)
+							+ (sourceData[row1 + j + channel] & 0xFF)
+							+ (sourceData[row1 + j + 3 + channel] & 0xFF)) / 4);
+				}
+			}
+			
+			if (pairedW < w) {
+				final int i = 3 * pairedW;
+				final int j = 2 * i;
+				
+				for (int channel = 0; channel < 3; ++channel) {
+					targetData[targetRow + i + channel] = (byte) (((sourceData[row0 + j + channel] & 0xFF)
+							+ (sourceData[row1 + j + channel] & 0xFF)) / 2);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes in <code>target</code> at (<code>targetX</code>, <code>targetY</code>) the most frequent value of each 2x2 block
+	 * of <code>source</code>, whose pixels are single bytes such as label indices, clipping to <code>target</code>;
+	 * ties, and blocks whose values all differ, give the top-left value, as a nearest-neighbor reduction would.
+	 * <br>If <code>source</code> has an odd dimension, its last row or column is reduced with itself.
+	 */
+	public static final void reduceMajority(final BufferedImage source, final BufferedImage target, final int targetX, final int targetY) {
+		final WritableRaster sourceRaster = source.getRaster();
+		final WritableRaster targetRaster = target.getRaster();
+		final ComponentSampleModel sourceModel = (ComponentSampleModel) sourceRaster.getSampleModel();
+		final ComponentSampleModel targetModel = (ComponentSampleModel) targetRaster.getSampleModel();
+		final byte[] sourceData = ((DataBufferByte) sourceRaster.getDataBuffer()).getData();
+		final byte[] targetData = ((DataBufferByte) targetRaster.getDataBuffer()).getData();
+		final int sourceStride = sourceModel.getScanlineStride();
+		final int targetStride = targetModel.getScanlineStride();
+		final int sourceOffset = -sourceRaster.getSampleModelTranslateY() * sourceStride - sourceRaster.getSampleModelTranslateX();
+		final int targetOffset = -targetRaster.getSampleModelTranslateY() * targetStride - targetRaster.getSampleModelTranslateX();
+		final int w = min((source.getWidth() + 1) / 2, target.getWidth() - targetX);
+		final int h = min((source.getHeight() + 1) / 2, target.getHeight() - targetY);
+		
+		for (int y = 0; y < h; ++y) {
+			final int row0 = sourceOffset + 2 * y * sourceStride;
+			final int row1 = 2 * y + 1 < source.getHeight() ? row0 + sourceStride : row0;
+			final int targetRow = targetOffset + (targetY + y) * targetStride + targetX;
+			
+			for (int x = 0; x < w; ++x) {
+				final int j0 = 2 * x;
+				final int j1 = j0 + 1 < source.getWidth() ? j0 + 1 : j0;
+				final byte a = sourceData[row0 + j0];
+				final byte b = sourceData[row0 + j1];
+				final byte c = sourceData[row1 + j0];
+				final byte d = sourceData[row1 + j1];
+				
+				// The top-left value, unless it occurs once and another value occurs twice
+				targetData[targetRow + x] = a == b || a == c || a == d || b != c && b != d && c != d ? a : b == c || b == d ? b : c;
+			}
+		}
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static abstract interface Reducer extends Serializable {
+		
+		public abstract void reduce(BufferedImage source, BufferedImage target, int targetX, int targetY);
+		
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static abstract interface TileConsumer extends Serializable {
+		
+		public abstract void tile(int lod, int tileX, int tileY, BufferedImage tile);
+		
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	static final class PendingTile {
+		
+		private final TilePool.Tile tile;
+		
+		private int remainingChildCount;
+		
+		PendingTile(final TilePool.Tile tile, final int childCount) {
+			this.tile = tile;
+			this.remainingChildCount = childCount;
+		}
+		
+		final TilePool.Tile getTile() {
+			return this.tile;
+		}
+		
+		final BufferedImage getImage() {
+			return this.tile.getImage();
+		}
+		
+		/**
+		 * @return <code>true</code> if this was the last expected child
+		 */
+		final synchronized boolean childDone() {
+			return --this.remainingChildCount == 0;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,329 @@
+package imj2.tools;
+
+import static java.lang.Math.min;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * Encodes and decodes tile entries; the ImageIO readers and writers are cached per thread.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public abstract class TileCodec implements Serializable {
+	
+	private final String format;
+	
+	private final AtomicLong encodedTileCount;
+	
+	private final AtomicLong encodedPixelCount;
+	
+	private final AtomicLong encodedByteCount;
+	
+	private final AtomicLong encodingNanoseconds;
+	
+	protected TileCodec(final String format) {
+		this.format = format;
+		this.encodedTileCount = new AtomicLong();
+		this.encodedPixelCount = new AtomicLong();
+		this.encodedByteCount = new AtomicLong();
+		this.encodingNanoseconds = new AtomicLong();
+	}
+	
+	/**
+	 * @return the format name, which is also used as the entry extension
+	 */
+	public final String getFormat() {
+		return this.format;
+	}
+	
+	/**
+	 * Can be called concurrently.
+	 */
+	public final void write(final BufferedImage tile, final int lod, final OutputStream output) throws IOException {
+		final long start = System.nanoTime();
+		final ZipSink.CountingOutputStream counter = new ZipSink.CountingOutputStream(output);
+		
+		this.encode(tile, lod, counter);
+		
+		counter.flush();
+		
+		this.encodingNanoseconds.addAndGet(System.nanoTime() - start);
+		this.encodedTileCount.incrementAndGet();
+		this.encodedPixelCount.addAndGet((long) tile.getWidth() * tile.getHeight());
+		this.encodedByteCount.addAndGet(counter.getCount());
+	}
+	
+	/**
+	 * Can be called concurrently.
+	 */
+	public final BufferedImage read(final InputStream input) throws IOException {
+		return this.decode(input);
+	}
+	
+	public final long getEncodedTileCount() {
+		return this.encodedTileCount.get();
+	}
+	
+	public final long getEncodedByteCount() {
+		return this.encodedByteCount.get();
+	}
+	
+	/**
+	 * @return the encoded megapixels per second of encoding time, summed over all threads
+	 */
+	public final double getEncodingThroughput() {
+		final long nanoseconds = this.encodingNanoseconds.get();
+		
+		return nanoseconds == 0L ? 0.0 : this.encodedPixelCount.get() * 1_000.0 / nanoseconds;
+	}
+	
+	@Override
+	public final String toString() {
+		return String.format(Locale.ENGLISH, "%s: %d tiles, %d bytes, %.1f Mpixel/s per thread",
+				this.getFormat(), this.getEncodedTileCount(), this.getEncodedByteCount(), this.getEncodingThroughput());
+	}
+	
+	protected abstract void encode(BufferedImage tile, int lod, OutputStream output) throws IOException;
+	
+	protected abstract BufferedImage decode(InputStream input) throws IOException;
+	
+	/**
+	 * {@value}.
+	 */
+	private static final long serialVersionUID = -5457405617612808318L;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final String DEFAULT_FORMAT = "jpg";
+	
+	/**
+	 * {@value}.
+	 */
+	public static final float DEFAULT_JPEG_QUALITY = 0.75F;
+	
+	static final ThreadLocal<ImageWriter> JPEG_WRITERS = ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("jpg").next());
+	
+	static final ThreadLocal<ImageReader> JPEG_READERS = ThreadLocal.withInitial(() -> ImageIO.getImageReadersByFormatName("jpg").next());
+	
+	static final ThreadLocal<ImageWriter> PNG_WRITERS = ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("png").next());
+	
+	static final ThreadLocal<ImageReader> PNG_READERS = ThreadLocal.withInitial(() -> ImageIO.getImageReadersByFormatName("png").next());
+	
+	/**
+	 * @return a codec able to decode the entries written by any codec of the same format
+	 */
+	public static final TileCodec forFormat(final String format) {
+		switch (format) {
+		case "jpg":
+			return new Jpeg(new float[] { DEFAULT_JPEG_QUALITY }, true);
+		case "png":
+			return new Png();
+		case "raw":
+			return new Raw();
+		default:
+			throw new IllegalArgumentException("Unknown tile format: " + format);
+		}
+	}
+	
+	static final void write(final ImageWriter writer, final IIOImage image, final ImageWriteParam parameters,
+			final OutputStream output) throws IOException {
+		try (final ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+			writer.setOutput(imageOutput);
+			
+			try {
+				writer.write(null, image, parameters);
+			} finally {
+				writer.setOutput(null);
+			}
+		}
+	}
+	
+	static final BufferedImage read(final ImageReader reader, final InputStream input) throws IOException {
+		try (final ImageInputStream imageInput = new MemoryCacheImageInputStream(input)) {
+			reader.setInput(imageInput, true, true);
+			
+			try {
+				return reader.read(0);
+			} finally {
+				reader.setInput(null);
+			}
+		}
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class Jpeg extends TileCodec {
+		
+		private final float[] qualities;
+		
+		private final boolean chromaSubsampling;
+		
+		/**
+		 * @param qualities
+		 * <br>Quality of each LOD, the last one being used for the following LODs
+		 * @param chromaSubsampling
+		 * <br>4:2:0 if <code>true</code>, 4:4:4 otherwise
+		 */
+		public Jpeg(final float[] qualities, final boolean chromaSubsampling) {
+			super("jpg");
+			this.qualities = qualities.clone();
+			this.chromaSubsampling = chromaSubsampling;
+		}
+		
+		public final float getQuality(final int lod) {
+			return this.qualities[min(lod, this.qualities.length - 1)];
+		}
+		
+		@Override
+		protected final void encode(final BufferedImage tile, final int lod, final OutputStream output) throws IOException {
+			final ImageWriter writer = JPEG_WRITERS.get();
+			final ImageWriteParam parameters = writer.getDefaultWriteParam();
+			IIOMetadata metadata = null;
+			
+			parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			parameters.setCompressionQuality(this.getQuality(lod));
+			
+			if (!this.chromaSubsampling) {
+				metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(tile), parameters);
+				final IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+				final NodeList componentSpecs = tree.getElementsByTagName("componentSpec");
+				
+				for (int i = 0; i < componentSpecs.getLength(); ++i) {
+					final IIOMetadataNode componentSpec = (IIOMetadataNode) componentSpecs.item(i);
+					
+					componentSpec.setAttribute("HsamplingFactor", "1");
+					componentSpec.setAttribute("VsamplingFactor", "1");
+				}
+				
+				metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+			}
+			
+			write(writer, new IIOImage(tile, null, metadata), parameters, output);
+		}
+		
+		@Override
+		protected final BufferedImage decode(final InputStream input) throws IOException {
+			return read(JPEG_READERS.get(), input);
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		private static final long serialVersionUID = 3590426346618395569L;
+		
+		/**
+		 * {@value}.
+		 */
+		public static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+		
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class Png extends TileCodec {
+		
+		public Png() {
+			super("png");
+		}
+		
+		@Override
+		protected final void encode(final BufferedImage tile, final int lod, final OutputStream output) throws IOException {
+			write(PNG_WRITERS.get(), new IIOImage(tile, null, null), null, output);
+		}
+		
+		@Override
+		protected final BufferedImage decode(final InputStream input) throws IOException {
+			return read(PNG_READERS.get(), input);
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		private static final long serialVersionUID = 2313290386002931372L;
+		
+	}
+	
+	/**
+	 * Width and height as big-endian ints followed by the BGR bytes, row by row.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class Raw extends TileCodec {
+		
+		public Raw() {
+			super("raw");
+		}
+		
+		@Override
+		protected final void encode(final BufferedImage tile, final int lod, final OutputStream output) throws IOException {
+			if (tile.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+				throw new IllegalArgumentException("Unsupported image type: " + tile.getType());
+			}
+			
+			final WritableRaster raster = tile.getRaster();
+			final int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+			final int offset = -raster.getSampleModelTranslateY() * stride - 3 * raster.getSampleModelTranslateX();
+			final byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+			final int w = tile.getWidth();
+			final int h = tile.getHeight();
+			final DataOutputStream dataOutput = new DataOutputStream(output);
+			
+			dataOutput.writeInt(w);
+			dataOutput.writeInt(h);
+			
+			for (int y = 0; y < h; ++y) {
+				dataOutput.write(data, offset + y * stride, 3 * w);
+			}
+			
+			dataOutput.flush();
+		}
+		
+		@Override
+		protected final BufferedImage decode(final InputStream input) throws IOException {
+			final DataInputStream dataInput = new DataInputStream(input);
+			final int w = dataInput.readInt();
+			final int h = dataInput.readInt();
+			final BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+			
+			dataInput.readFully(((DataBufferByte) result.getRaster().getDataBuffer()).getData());
+			
+			return result;
+		}
+		
+		/**
+		 * {@value}.
+		 */
+		private static final long serialVersionUID = -3183946985981658095L;
+		
+	}
+	
+}
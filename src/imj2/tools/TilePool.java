@@ -0,0 +1,124 @@
+package imj2.tools;
+
+import static multij.tools.Tools.unchecked;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of full-size tile images; smaller (edge) tiles are views of a full-size backing image.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class TilePool {
+	
+	private final int tileWidth;
+	
+	private final int tileHeight;
+	
+	private final int imageType;
+	
+	private final int capacity;
+	
+	private final BlockingQueue<Tile> freeTiles;
+	
+	private final AtomicInteger tileCount;
+	
+	/**
+	 * @param capacity
+	 * <br>Maximum number of backing images; {@link #acquire(int, int)} blocks when they are all in use
+	 */
+	public TilePool(final int tileWidth, final int tileHeight, final int imageType, final int capacity) {
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.imageType = imageType;
+		this.capacity = capacity;
+		this.freeTiles = new LinkedBlockingQueue<>();
+		this.tileCount = new AtomicInteger();
+	}
+	
+	public final int getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * @return the number of backing images allocated so far
+	 */
+	public final int getTileCount() {
+		return this.tileCount.get();
+	}
+	
+	public final int getFreeTileCount() {
+		return this.freeTiles.size();
+	}
+	
+	/**
+	 * @return a tile whose canvas has the requested size; its content is undefined
+	 */
+	public final Tile acquire(final int width, final int height) {
+		if (this.tileWidth < width || this.tileHeight < height) {
+			throw new IllegalArgumentException(width + "x" + height + " exceeds " + this.tileWidth + "x" + this.tileHeight);
+		}
+		
+		Tile result = this.freeTiles.poll();
+		
+		if (result == null) {
+			if (this.tileCount.incrementAndGet() <= this.capacity) {
+				result = new Tile(new BufferedImage(this.tileWidth, this.tileHeight, this.imageType));
+			} else {
+				this.tileCount.decrementAndGet();
+				
+				try {
+					result = this.freeTiles.take();
+				} catch (final InterruptedException exception) {
+					throw unchecked(exception);
+				}
+			}
+		}
+		
+		return result.setSize(width, height);
+	}
+	
+	public final void release(final Tile tile) {
+		this.freeTiles.add(tile);
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class Tile {
+		
+		private final BufferedImage backing;
+		
+		private final Map<Long, Canvas> views;
+		
+		private Canvas canvas;
+		
+		Tile(final BufferedImage backing) {
+			this.backing = backing;
+			this.views = new HashMap<>();
+		}
+		
+		public final Canvas getCanvas() {
+			return this.canvas;
+		}
+		
+		public final BufferedImage getImage() {
+			return this.getCanvas().getImage();
+		}
+		
+		final Tile setSize(final int width, final int height) {
+			this.canvas = this.views.computeIfAbsent(((long) width << Integer.SIZE) | height, k -> new Canvas().setImage(
+					width == this.backing.getWidth() && height == this.backing.getHeight() ?
+							this.backing : this.backing.getSubimage(0, 0, width, height)));
+			
+			return this;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,381 @@
+package imj2.tools;
+
+import static multij.tools.Tools.unchecked;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class ZipSink implements Closeable {
+	
+	private final File file;
+	
+	private final CountingOutputStream counter;
+	
+	private final ZipOutputStream zip;
+	
+	private final BlockingQueue<Entry> queue;
+	
+	private final Map<String, long[]> entries;
+	
+	private final Thread writer;
+	
+	private final Journal journal;
+	
+	private volatile Throwable failure;
+	
+	private volatile long flushedPosition;
+	
+	private RandomAccessFile reader;
+	
+	private boolean closed;
+	
+	public ZipSink(final File file) {
+		this(file, DEFAULT_QUEUE_CAPACITY, null);
+	}
+	
+	/**
+	 * @param journal
+	 * <br>If not null, receives the location of each entry once its data has been flushed to the file
+	 */
+	public ZipSink(final File file, final int queueCapacity, final Journal journal) {
+		this.file = file;
+		this.journal = journal;
+		
+		try {
+			this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.zip = new ZipOutputStream(this.counter);
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.entries = new ConcurrentHashMap<>();
+		this.writer = new Thread(this::write, "ZipSink " + file.getName());
+		
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+	
+	public final File getFile() {
+		return this.file;
+	}
+	
+	public final int getQueueSize() {
+		return this.queue.size();
+	}
+	
+	public final boolean contains(final String key) {
+		return this.entries.containsKey(key);
+	}
+	
+	/**
+	 * The returned stream buffers its content in memory; the entry is queued when the stream is closed.
+	 */
+	public final OutputStream open(final String key) {
+		this.checkFailure();
+		
+		return new ByteArrayOutputStream(DEFAULT_ENTRY_BUFFER_SIZE) {
+			
+			private boolean submitted;
+			
+			@Override
+			public final void close() throws IOException {
+				if (!this.submitted) {
+					this.submitted = true;
+					ZipSink.this.put(key, this.buf, this.count);
+				}
+			}
+			
+		};
+	}
+	
+	/**
+	 * Queues a STORED entry; <code>data</code> must not be modified afterwards.
+	 */
+	public final void put(final String key, final byte[] data, final int length) {
+		final CRC32 crc = new CRC32();
+		
+		crc.update(data, 0, length);
+		
+		this.submit(new Entry(key, data, length, crc.getValue(), null));
+	}
+	
+	/**
+	 * Blocks until all the entries queued so far are written to the file.
+	 */
+	public final void flush() {
+		final CountDownLatch done = new CountDownLatch(1);
+		
+		this.submit(new Entry(null, null, 0, 0L, done));
+		
+		try {
+			while (!done.await(1L, TimeUnit.SECONDS)) {
+				this.checkFailure();
+			}
+		} catch (final InterruptedException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.checkFailure();
+	}
+	
+	/**
+	 * Reads back an entry that has already been submitted.
+	 */
+	public final InputStream reopen(final String key) {
+		long[] location = this.entries.get(key);
+		
+		if (location == null) {
+			this.flush();
+			location = this.entries.get(key);
+		}
+		
+		if (location == null) {
+			throw unchecked(new FileNotFoundException(key));
+		}
+		
+		if (this.flushedPosition < location[0] + location[1]) {
+			this.flush();
+		}
+		
+		final byte[] result = new byte[(int) location[1]];
+		
+		synchronized (this) {
+			try {
+				if (this.reader == null) {
+					this.reader = new RandomAccessFile(this.file, "r");
+				}
+				
+				this.reader.seek(location[0]);
+				this.reader.readFully(result);
+			} catch (final IOException exception) {
+				throw unchecked(exception);
+			}
+		}
+		
+		return new ByteArrayInputStream(result);
+	}
+	
+	@Override
+	public final void close() throws IOException {
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			
+			this.closed = true;
+		}
+		
+		try {
+			this.queue.put(END);
+			this.writer.join();
+		} catch (final InterruptedException exception) {
+			throw unchecked(exception);
+		} finally {
+			synchronized (this) {
+				if (this.reader != null) {
+					this.reader.close();
+				}
+			}
+		}
+		
+		this.checkFailure();
+	}
+	
+	private final void submit(final Entry entry) {
+		this.checkFailure();
+		
+		try {
+			this.queue.put(entry);
+		} catch (final InterruptedException exception) {
+			throw unchecked(exception);
+		}
+	}
+	
+	private final void checkFailure() {
+		if (this.failure != null) {
+			throw unchecked(this.failure);
+		}
+	}
+	
+	private final void write() {
+		final List<Entry> unflushedEntries = new ArrayList<>();
+		
+		try {
+			try {
+				for (Entry entry = this.queue.take(); entry != END; entry = this.queue.take()) {
+					if (entry.getName() == null) {
+						this.flush(unflushedEntries);
+						entry.getDone().countDown();
+						continue;
+					}
+					
+					final ZipEntry zipEntry = new ZipEntry(entry.getName());
+					
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(entry.getLength());
+					zipEntry.setCompressedSize(entry.getLength());
+					zipEntry.setCrc(entry.getCrc());
+					
+					this.zip.putNextEntry(zipEntry);
+					
+					final long offset = this.counter.getCount();
+					
+					this.zip.write(entry.getData(), 0, entry.getLength());
+					this.zip.closeEntry();
+					this.entries.put(entry.getName(), new long[] { offset, entry.getLength() });
+					unflushedEntries.add(entry);
+					
+					if (this.queue.isEmpty() || FLUSH_THRESHOLD <= this.counter.getCount() - this.flushedPosition) {
+						this.flush(unflushedEntries);
+					}
+				}
+				
+				this.flush(unflushedEntries);
+			} finally {
+				this.zip.close();
+			}
+		} catch (final Throwable exception) {
+			this.failure = exception;
+			
+			// Release the threads waiting for a flush or for room in the queue
+			for (Entry entry = this.queue.poll(); entry != null; entry = this.queue.poll()) {
+				if (entry.getDone() != null) {
+					entry.getDone().countDown();
+				}
+			}
+		}
+	}
+	
+	private final void flush(final List<Entry> unflushedEntries) throws IOException {
+		this.zip.flush();
+		this.flushedPosition = this.counter.getCount();
+		
+		if (this.journal != null) {
+			for (int i = 0; i < unflushedEntries.size(); ++i) {
+				final Entry entry = unflushedEntries.get(i);
+				
+				this.journal.append(entry.getName(), this.entries.get(entry.getName())[0], entry.getLength(), entry.getCrc(),
+						i + 1 == unflushedEntries.size());
+			}
+		}
+		
+		unflushedEntries.clear();
+	}
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final long FLUSH_THRESHOLD = 8L << 20;
+	
+	/**
+	 * {@value}.
+	 */
+	public static final int DEFAULT_ENTRY_BUFFER_SIZE = 1 << 16;
+	
+	static final Entry END = new Entry(null, null, 0, 0L, null);
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	static final class Entry {
+		
+		private final String name;
+		
+		private final byte[] data;
+		
+		private final int length;
+		
+		private final long crc;
+		
+		private final CountDownLatch done;
+		
+		Entry(final String name, final byte[] data, final int length, final long crc, final CountDownLatch done) {
+			this.name = name;
+			this.data = data;
+			this.length = length;
+			this.crc = crc;
+			this.done = done;
+		}
+		
+		final String getName() {
+			return this.name;
+		}
+		
+		final byte[] getData() {
+			return this.data;
+		}
+		
+		final int getLength() {
+			return this.length;
+		}
+		
+		final long getCrc() {
+			return this.crc;
+		}
+		
+		final CountDownLatch getDone() {
+			return this.done;
+		}
+		
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	static final class CountingOutputStream extends FilterOutputStream {
+		
+		private long count;
+		
+		CountingOutputStream(final OutputStream output) {
+			super(output);
+		}
+		
+		final long getCount() {
+			return this.count;
+		}
+		
+		@Override
+		public final void write(final int b) throws IOException {
+			this.out.write(b);
+			++this.count;
+		}
+		
+		@Override
+		public final void write(final byte[] b, final int off, final int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+		
+	}
+	
+}
@@ -13,6 +13,7 @@ import imj2.core.SubsampledImage2D;
 import imj2.core.TiledImage2D;
 import imj2.tools.IMJTools;
 import imj2.tools.InputSource;
+import imj2.tools.TileCodec;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -22,8 +23,6 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 
-import javax.imageio.ImageIO;
-
 import multij.xml.XMLTools;
 
 import org.w3c.dom.Document;
@@ -47,6 +46,8 @@ public final class MultiFileImage2D extends TiledImage2D {
 	
 	private final String tileBase;
 	
+	private final TileCodec codec;
+	
 	private BufferedImage tile;
 	
 	private final Channels channels;
@@ -68,10 +69,19 @@ public final class MultiFileImage2D extends TiledImage2D {
 		this.tileBase = baseName(new File(id).getName()) + "_svs" + lod + "_";
 		this.lodImages = lodImages;
 		
-		try (final InputStream xml = this.inputSource.open("metadata.xml");
-				final InputStream tile = this.inputSource.open(this.tileBase + "0_0.jpg")) {
+		try (final InputStream xml = this.inputSource.open("metadata.xml")) {
 			this.metadata = parse(xml);
-			final BufferedImage tile00 = ImageIO.read(tile);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		{
+			final String tileFormat = this.metadata.getDocumentElement().getAttribute("tileFormat");
+			this.codec = TileCodec.forFormat(tileFormat.isEmpty() ? TileCodec.DEFAULT_FORMAT : tileFormat);
+		}
+		
+		try (final InputStream tile = this.inputSource.open(this.tileBase + "0_0." + this.codec.getFormat())) {
+			final BufferedImage tile00 = this.codec.read(tile);
 			final Element image = (Element) getNode(this.metadata, "image/subimage[@id='" + lod +"']");
 			this.width = getNumber(image, "@width").intValue();
 			this.height = getNumber(image, "@height").intValue();
@@ -105,6 +115,30 @@ public final class MultiFileImage2D extends TiledImage2D {
 		return this.metadata;
 	}
 	
+	public final TileCodec getCodec() {
+		return this.codec;
+	}
+	
+	/**
+	 * @return the level <code>lod</code> if it is stored in the archive, otherwise <code>null</code>
+	 */
+	public final MultiFileImage2D getArchivedLODImage(final int lod) {
+		final Image2D result = this.lodImages == null ? null : this.lodImages.get(lod);
+		
+		return result instanceof MultiFileImage2D ? (MultiFileImage2D) result : null;
+	}
+	
+	public final boolean containsTile(final int tileX, final int tileY) {
+		return this.inputSource.contains(this.getTileName(tileX, tileY));
+	}
+	
+	/**
+	 * Reads the tile entry without decoding it; can be called concurrently.
+	 */
+	public final InputStream openTile(final int tileX, final int tileY) {
+		return this.inputSource.open(this.getTileName(tileX, tileY));
+	}
+	
 	@Override
 	public final int getWidth() {
 		return this.width;
@@ -178,16 +212,18 @@ public final class MultiFileImage2D extends TiledImage2D {
 	
 	@Override
 	public final BufferedImage updateTile() {
-		final String tileName = this.tileBase + this.getTileX() + "_" + this.getTileY() + ".jpg";
+		// Tiles referencing the same entry share their cache entry
+		final String tileName = this.inputSource.resolve(this.getTileName(this.getTileX(), this.getTileY()));
 		final String tileKey = this.getId() + " " + tileName;
 		final InputSource inputSource = this.inputSource;
+		final TileCodec codec = this.codec;
 		
 		this.tile = IMJCoreTools.cache(tileKey, new Callable<BufferedImage>() {
 			
 			@Override
 			public final BufferedImage call() throws Exception {
 				try (final InputStream input = inputSource.open(tileName)) {
-					return ImageIO.read(input);
+					return codec.read(input);
 				}
 			}
 			
@@ -196,6 +232,10 @@ public final class MultiFileImage2D extends TiledImage2D {
 		return this.tile;
 	}
 	
+	private final String getTileName(final int tileX, final int tileY) {
+		return this.tileBase + tileX + "_" + tileY + "." + this.codec.getFormat();
+	}
+	
 	@Override
 	protected final boolean makeNewTile() {
 		return this.tile.getWidth() != this.getTileWidth() || this.tile.getHeight() != this.getTileHeight();
@@ -0,0 +1,391 @@
+package imj2.zipslideviewer;
+
+import static multij.tools.Tools.unchecked;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import imj2.tools.InputSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import multij.xml.XMLTools;
+
+import org.w3c.dom.Document;
+
+/**
+ * Serves the tiles of a slide over HTTP as <code>/{lod}/{column}_{row}.{format}</code>,
+ * where level 0 is the full resolution, and its metadata as <code>/metadata.xml</code>.
+ * <br>Encoded tiles are kept in a cache bounded in bytes and shared by all the requests,
+ * which are handled by a fixed number of threads.
+ * 
+ * @author codistmonk (creation 2026-10-17)
+ */
+public final class TileServer implements Closeable {
+	
+	private final TileSource source;
+	
+	private final HttpServer server;
+	
+	private final ExecutorService executor;
+	
+	private final TileCache cache;
+	
+	private final Map<String, CompletableFuture<CachedTile>> pendingTiles;
+	
+	private final byte[] metadata;
+	
+	private final AtomicLong requestCount;
+	
+	private final AtomicLong missCount;
+	
+	/**
+	 * @param cacheCapacity
+	 * <br>Maximum number of bytes of encoded tiles kept in memory
+	 */
+	public TileServer(final TileSource source, final InetSocketAddress address, final int threadCount, final long cacheCapacity) {
+		this.source = source;
+		this.executor = Executors.newFixedThreadPool(threadCount);
+		this.cache = new TileCache(cacheCapacity);
+		this.pendingTiles = new ConcurrentHashMap<>();
+		this.requestCount = new AtomicLong();
+		this.missCount = new AtomicLong();
+		
+		{
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			
+			XMLTools.write(source.getMetadata(), buffer, 0);
+			
+			this.metadata = buffer.toByteArray();
+		}
+		
+		try {
+			this.server = HttpServer.create(address, 0);
+		} catch (final IOException exception) {
+			throw unchecked(exception);
+		}
+		
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+	}
+	
+	public final InetSocketAddress getAddress() {
+		return this.server.getAddress();
+	}
+	
+	public final long getRequestCount() {
+		return this.requestCount.get();
+	}
+	
+	/**
+	 * @return the number of tiles that had to be produced by the source
+	 */
+	public final long getMissCount() {
+		return this.missCount.get();
+	}
+	
+	/**
+	 * Can be called concurrently.
+	 * 
+	 * @return <code>null</code> if the source has no such tile
+	 */
+	public final CachedTile getTile(final int lod, final int tileX, final int tileY) throws IOException {
+		final String key = lod + "/" + tileX + "_" + tileY;
+		final CachedTile cached = this.cache.get(key);
+		
+		if (cached != null) {
+			return cached;
+		}
+		
+		final CompletableFuture<CachedTile> pending = new CompletableFuture<>();
+		final CompletableFuture<CachedTile> previous = this.pendingTiles.putIfAbsent(key, pending);
+		
+		// Concurrent requests for the same tile wait for the first one instead of producing it again
+		if (previous != null) {
+			try {
+				return previous.get();
+			} catch (final InterruptedException exception) {
+				throw unchecked(exception);
+			} catch (final ExecutionException exception) {
+				throw unchecked(exception.getCause());
+			}
+		}
+		
+		try {
+			final byte[] data = this.source.getTile(lod, tileX, tileY);
+			final CachedTile result = data == null ? null : new CachedTile(data);
+			
+			this.missCount.incrementAndGet();
+			
+			if (result != null) {
+				this.cache.put(key, result);
+			}
+			
+			pending.complete(result);
+			
+			return result;
+		} catch (final Throwable exception) {
+			pending.completeExceptionally(exception);
+			
+			throw exception;
+		} finally {
+			this.pendingTiles.remove(key);
+		}
+	}
+	
+	@Override
+	public final void close() {
+		this.server.stop(0);
+		this.executor.shutdown();
+	}
+	
+	@Override
+	public final String toString() {
+		return "requests: " + this.getRequestCount() + ", misses: " + this.getMissCount() + ", cache: " + this.cache;
+	}
+	
+	private final void handle(final HttpExchange exchange) throws IOException {
+		try {
+			this.requestCount.incrementAndGet();
+			
+			if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+				send(exchange, 405, null, null);
+				return;
+			}
+			
+			final String path = exchange.getRequestURI().getPath();
+			
+			if ("/metadata.xml".equals(path)) {
+				exchange.getResponseHeaders().set("Content-Type", "application/xml");
+				send(exchange, 200, this.metadata, null);
+				return;
+			}
+			
+			final Matcher matcher = TILE_PATH.matcher(path);
+			
+			if (!matcher.matches() || !this.source.getFormat().equals(matcher.group(4))) {
+				send(exchange, 404, null, null);
+				return;
+			}
+			
+			final int lod = Integer.parseInt(matcher.group(1));
+			final int tileX = Integer.parseInt(matcher.group(2)) * this.source.getTileWidth();
+			final int tileY = Integer.parseInt(matcher.group(3)) * this.source.getTileHeight();
+			final CachedTile tile = this.getTile(lod, tileX, tileY);
+			
+			if (tile == null) {
+				send(exchange, 404, null, null);
+				return;
+			}
+			
+			exchange.getResponseHeaders().set("Content-Type", contentType(this.source.getFormat()));
+			exchange.getResponseHeaders().set("ETag", tile.getETag());
+			exchange.getResponseHeaders().set("Cache-Control", "max-age=86400");
+			
+			if (tile.getETag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				send(exchange, 304, null, null);
+			} else {
+				send(exchange, 200, tile.getData(), null);
+			}
+		} catch (final NumberFormatException exception) {
+			send(exchange, 404, null, null);
+		} catch (final Throwable exception) {
+			exception.printStackTrace();
+			send(exchange, 500, null, exception);
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	static final Pattern TILE_PATH = Pattern.compile("/(\\d+)/(\\d+)_(\\d+)\\.(\\w+)");
+	
+	static final void send(final HttpExchange exchange, final int status, final byte[] data, final Throwable error) throws IOException {
+		final byte[] body = data != null ? data : error != null ? ("" + error).getBytes("UTF-8") : null;
+		
+		if (body == null || "HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1L);
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			
+			try (final OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		}
+	}
+	
+	public static final String contentType(final String format) {
+		switch (format) {
+		case "jpg":
+			return "image/jpeg";
+		case "png":
+			return "image/png";
+		default:
+			return "application/octet-stream";
+		}
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static abstract interface TileSource {
+		
+		/**
+		 * @return a document in the format of the <code>metadata.xml</code> entry of a WSI archive
+		 */
+		public abstract Document getMetadata();
+		
+		public abstract String getFormat();
+		
+		public abstract int getTileWidth();
+		
+		public abstract int getTileHeight();
+		
+		/**
+		 * Can be called concurrently.
+		 * 
+		 * @return the encoded tile at (<code>tileX</code>, <code>tileY</code>) in pixels of level <code>lod</code>,
+		 * or <code>null</code> if there is no such tile
+		 */
+		public abstract byte[] getTile(int lod, int tileX, int tileY) throws IOException;
+		
+	}
+	
+	/**
+	 * Serves the entries of a WSI archive as they are, without decoding them.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class ArchiveTileSource implements TileSource {
+		
+		private final MultiFileImage2D image;
+		
+		public ArchiveTileSource(final MultiFileImage2D image) {
+			this.image = image;
+		}
+		
+		@Override
+		public final Document getMetadata() {
+			return this.image.getMetadata();
+		}
+		
+		@Override
+		public final String getFormat() {
+			return this.image.getCodec().getFormat();
+		}
+		
+		@Override
+		public final int getTileWidth() {
+			return this.image.getOptimalTileWidth();
+		}
+		
+		@Override
+		public final int getTileHeight() {
+			return this.image.getOptimalTileHeight();
+		}
+		
+		@Override
+		public final byte[] getTile(final int lod, final int tileX, final int tileY) throws IOException {
+			final MultiFileImage2D lodImage = this.image.getArchivedLODImage(lod);
+			
+			if (lodImage == null || !lodImage.containsTile(tileX, tileY)) {
+				return null;
+			}
+			
+			try (final InputStream input = lodImage.openTile(tileX, tileY)) {
+				return InputSource.readAll(input);
+			}
+		}
+		
+	}
+	
+	/**
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	public static final class CachedTile {
+		
+		private final byte[] data;
+		
+		private final String eTag;
+		
+		CachedTile(final byte[] data) {
+			final CRC32 crc = new CRC32();
+			
+			crc.update(data);
+			
+			this.data = data;
+			this.eTag = "\"" + Long.toHexString(crc.getValue()) + "-" + data.length + "\"";
+		}
+		
+		public final byte[] getData() {
+			return this.data;
+		}
+		
+		public final String getETag() {
+			return this.eTag;
+		}
+		
+	}
+	
+	/**
+	 * Least recently used tiles are evicted first.
+	 * 
+	 * @author codistmonk (creation 2026-10-17)
+	 */
+	static final class TileCache {
+		
+		private final long capacity;
+		
+		private final LinkedHashMap<String, CachedTile> tiles;
+		
+		private long size;
+		
+		TileCache(final long capacity) {
+			this.capacity = capacity;
+			this.tiles = new LinkedHashMap<>(256, 0.75F, true);
+		}
+		
+		final synchronized CachedTile get(final String key) {
+			return this.tiles.get(key);
+		}
+		
+		final synchronized void put(final String key, final CachedTile tile) {
+			final CachedTile previous = this.tiles.put(key, tile);
+			
+			if (previous != null) {
+				this.size -= previous.getData().length;
+			}
+			
+			this.size += tile.getData().length;
+			
+			for (final Iterator<CachedTile> i = this.tiles.values().iterator(); this.capacity < this.size && i.hasNext();) {
+				this.size -= i.next().getData().length;
+				i.remove();
+			}
+		}
+		
+		@Override
+		public final synchronized String toString() {
+			return this.tiles.size() + " tiles, " + this.size + " bytes";
+		}
+		
+	}
+	
+}